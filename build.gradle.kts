@@ -15,18 +15,7 @@ repositories {
     mavenCentral()
 }
 
-val osName = System.getProperty("os.name")
-val platform = when {
-    osName.startsWith("Windows") -> "win"
-    osName.startsWith("Mac") -> "mac"
-    else -> "linux"
-}
-
 dependencies {
-    implementation("org.openjfx:javafx-base:21.0.1:$platform")
-    implementation("org.openjfx:javafx-controls:21.0.1:$platform")
-    implementation("org.openjfx:javafx-graphics:21.0.1:$platform")
-
     implementation("com.opencsv:opencsv:5.10")
 
     implementation("org.jline:jline:3.23.0")
@@ -7,26 +7,59 @@ import java.util.Optional;
 
 public class AbstractSolver {
     final protected HashMap<String, Stop> stopIdToStop;
-    final protected List<Connection> connections;
+    final protected Stop[] stops; // indexed by Stop.getIndex()
+    final protected RouteInfo[] stopRouteInfos; // indexed by Stop.getIndex()
+    final protected ConnectionTable connections;
+    final protected StopNameIndex stopNames;
 
     public AbstractSolver(final Data data) {
         this.stopIdToStop = data.stopIdToStop;
+        this.stops = data.stops;
+        this.stopRouteInfos = data.stopRouteInfos;
         this.connections = data.connections;
+        this.stopNames = data.stopNames;
     }
 
     /**
-     * Returns the result of the search for a stop with the given name.
+     * Returns the dense indices of the stops with the given ids.
+     */
+    int[] toStopIdxs(List<String> stopIds) {
+        int[] stopIdxs = new int[stopIds.size()];
+        for (int i = 0; i < stopIdxs.length; i++) {
+            stopIdxs[i] = stopIdToStop.get(stopIds.get(i)).getIndex();
+        }
+        return stopIdxs;
+    }
+
+    /**
+     * Returns the route of one of the connections passing by the given stop, null
+     * if no connection passes by it.
+     */
+    RouteInfo getRouteInfo(Stop stop) {
+        return stopRouteInfos[stop.getIndex()];
+    }
+
+    /**
+     * Returns the index of the names of the stops, to look up, complete or
+     * correct a stop name.
+     */
+    public StopNameIndex getStopNames() {
+        return stopNames;
+    }
+
+    /**
+     * Returns the result of the search for a stop with the given name (whatever
+     * its case and accents, see StopNameIndex), in the order of the stop indices.
      */
     List<Stop> stopsWithName(final String name, Optional<String> routeName) {
         List<Stop> matchingStops = new ArrayList<>();
-        for (Stop stop : stopIdToStop.values()) {
-            if (routeName.isPresent() && stop.getRouteInfo() != null
-                    && !stop.getRouteInfo().getRouteName().equals(routeName.get())) {
+        for (Stop stop : stopNames.stopsWithName(name)) {
+            RouteInfo routeInfo = getRouteInfo(stop);
+            if (routeName.isPresent() && routeInfo != null
+                    && !routeInfo.getRouteName().equals(routeName.get())) {
                 continue;
             }
-            if (stop.getName().equals(name)) {
-                matchingStops.add(stop);
-            }
+            matchingStops.add(stop);
         }
         return matchingStops;
     }
@@ -42,7 +75,7 @@ public class AbstractSolver {
 
         while (i < j) {
             int mid = (i + j) / 2;
-            if (connections.get(mid).getTDep() < tDep) {
+            if (connections.tDep[mid] < tDep) {
                 i = mid + 1;
             } else {
                 j = mid;
@@ -52,12 +85,4 @@ public class AbstractSolver {
         return i;
     }
 
-    /**
-     * Returns the list of connections departing at or after our depature time.
-     */
-    public List<Connection> getFilteredConnections(int tDep) {
-        return connections.subList(getEarliestReachableConnectionIdx(tDep),
-                connections.size());
-    }
-
 }
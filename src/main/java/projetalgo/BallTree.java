@@ -1,64 +1,529 @@
 package projetalgo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Ball tree over a set of stops, used to find the stops close to a location.
+ *
+ * The tree is stored in flat arrays. The stops are reordered so that the stops
+ * of each node are contiguous (from nodeStart[n] to nodeEnd[n]), and the nodes
+ * are numbered in preorder: the left child of an internal node n is n + 1 and
+ * its right child is rightChild[n] (-1 for a leaf). The leaves hold up to
+ * LEAF_SIZE stops.
+ */
 public class BallTree {
-    private final BallTreeNode root;
+    private static final int LEAF_SIZE = 16;
+
+    // the stops, reordered by node, and their coordinates in radians
+    private final Stop[] stops;
+    private final double[] latRad;
+    private final double[] lonRad;
+
+    // nodes, in preorder
+    private int nNodes = 0;
+    private double[] centerLatRad;
+    private double[] centerLonRad;
+    private double[] radius; // km
+    private int[] nodeStart;
+    private int[] nodeEnd;
+    private int[] rightChild;
 
     public BallTree(final List<Stop> stops) {
-        root = new BallTreeNode(stops);
+        this.stops = stops.toArray(new Stop[0]);
+        this.latRad = new double[this.stops.length];
+        this.lonRad = new double[this.stops.length];
+        for (int i = 0; i < this.stops.length; i++) {
+            latRad[i] = Math.toRadians(this.stops[i].getCoord().lat());
+            lonRad[i] = Math.toRadians(this.stops[i].getCoord().lon());
+        }
+
+        int capacity = Math.max(1, 4 * this.stops.length / LEAF_SIZE + 1);
+        centerLatRad = new double[capacity];
+        centerLonRad = new double[capacity];
+        radius = new double[capacity];
+        nodeStart = new int[capacity];
+        nodeEnd = new int[capacity];
+        rightChild = new int[capacity];
+
+        if (this.stops.length > 0) {
+            build(0, this.stops.length, new double[this.stops.length]);
+        }
+    }
+
+    // -----------------------------------------------------
+    // Construction
+    // -----------------------------------------------------
+
+    /**
+     * Builds the subtree of the stops from..to and returns its node.
+     *
+     * @param keys scratch array for the median selection
+     */
+    private int build(int from, int to, double[] keys) {
+        int node = newNode(from, to);
+
+        // Find two far apart points: p2 the farthest from the first stop, p3 the
+        // farthest from p2
+        int p2 = farthest(from, from, to);
+        int p3 = farthest(p2, from, to);
+
+        // The center is the middle of p2 and p3, the radius the maximum distance from
+        // the center to any stop
+        double cLatRad = Math.toRadians((stops[p2].getCoord().lat() + stops[p3].getCoord().lat()) / 2);
+        double cLonRad = Math.toRadians((stops[p2].getCoord().lon() + stops[p3].getCoord().lon()) / 2);
+        double maxDistance = 0;
+        for (int i = from; i < to; i++) {
+            maxDistance = Math.max(maxDistance, Coord.haversine(cLatRad, cLonRad, latRad[i], lonRad[i]));
+        }
+        centerLatRad[node] = cLatRad;
+        centerLonRad[node] = cLonRad;
+        radius[node] = maxDistance;
+
+        if (to - from <= LEAF_SIZE) {
+            rightChild[node] = -1;
+            return node;
+        }
+
+        // Separate the stops into two halves: the ones closest to p2 and the others
+        double p2LatRad = latRad[p2];
+        double p2LonRad = lonRad[p2];
+        for (int i = from; i < to; i++) {
+            keys[i] = Coord.haversine(p2LatRad, p2LonRad, latRad[i], lonRad[i]);
+        }
+        int mid = (from + to) >>> 1;
+        select(keys, from, to, mid);
+
+        build(from, mid, keys); // left child = node + 1
+        rightChild[node] = build(mid, to, keys);
+        return node;
+    }
+
+    private int newNode(int from, int to) {
+        if (nNodes == nodeStart.length) {
+            int capacity = nNodes * 2;
+            centerLatRad = Arrays.copyOf(centerLatRad, capacity);
+            centerLonRad = Arrays.copyOf(centerLonRad, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            nodeStart = Arrays.copyOf(nodeStart, capacity);
+            nodeEnd = Arrays.copyOf(nodeEnd, capacity);
+            rightChild = Arrays.copyOf(rightChild, capacity);
+        }
+        nodeStart[nNodes] = from;
+        nodeEnd[nNodes] = to;
+        return nNodes++;
+    }
+
+    private int farthest(int fromStop, int from, int to) {
+        int farthest = from;
+        double maxDistance = -1;
+        for (int i = from; i < to; i++) {
+            double dist = Coord.haversine(latRad[fromStop], lonRad[fromStop], latRad[i], lonRad[i]);
+            if (dist > maxDistance) {
+                maxDistance = dist;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Quickselect: reorders the stops from..to (and their keys) so that the stop
+     * at k has the k-th smallest key, the ones before it smaller or equal keys
+     * and the ones after it greater or equal keys.
+     */
+    private void select(double[] keys, int from, int to, int k) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
     }
 
-    public BallTreeNode getRoot() {
-        return root;
+    private void swap(double[] keys, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        Stop stop = stops[i];
+        stops[i] = stops[j];
+        stops[j] = stop;
+        double lat = latRad[i];
+        latRad[i] = latRad[j];
+        latRad[j] = lat;
+        double lon = lonRad[i];
+        lonRad[i] = lonRad[j];
+        lonRad[j] = lon;
     }
 
+    // -----------------------------------------------------
+    // Queries
+    // -----------------------------------------------------
+
+    /**
+     * Returns the stops within radiusKm of the target stop (including itself).
+     */
     public List<Stop> findStopsWithinRadius(final Stop target, final double radiusKm) {
+        return findStopsWithinRadius(target.getCoord(), radiusKm);
+    }
+
+    /**
+     * Returns the stops within radiusKm of the given location.
+     */
+    public List<Stop> findStopsWithinRadius(final Coord target, final double radiusKm) {
         List<Stop> result = new ArrayList<>();
-        findStopsWithinRadius(root, target, radiusKm, result);
+        if (nNodes == 0) {
+            return result;
+        }
+
+        double tLatRad = Math.toRadians(target.lat());
+        double tLonRad = Math.toRadians(target.lon());
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+
+            // if the closest point of the ball (node) is further than the radius, we can
+            // skip it because we know it's too far
+            if (Coord.haversine(tLatRad, tLonRad, centerLatRad[node], centerLonRad[node]) - radius[node] > radiusKm) {
+                continue;
+            }
+
+            if (rightChild[node] == -1) {
+                for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                    if (Coord.haversine(tLatRad, tLonRad, latRad[i], lonRad[i]) <= radiusKm) {
+                        result.add(stops[i]);
+                    }
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = rightChild[node];
+                stack[top++] = node + 1;
+            }
+        }
+
         return result;
     }
 
-    private void findStopsWithinRadius(BallTreeNode node, Stop target, double radiusKm, List<Stop> result) {
-        if (node == null) {
-            return;
+    /**
+     * Returns the k stops closest to the given location, by increasing distance
+     * (fewer if the tree has less than k stops).
+     */
+    public List<Stop> findKNearest(final Coord target, final int k) {
+        if (k <= 0 || nNodes == 0) {
+            return new ArrayList<>();
         }
 
-        double centerDist = Coord.distance(target.getCoord(), node.center);
+        KNearest nearest = new KNearest(Math.min(k, stops.length));
+        findKNearest(0, Math.toRadians(target.lat()), Math.toRadians(target.lon()), nearest);
 
-        // if the closest point of the ball (node) is further than the radius, we can stop
-        // because we know it's too far
-        if (centerDist - node.radius > radiusKm) {
+        // the heap is emptied from the farthest to the closest stop
+        Stop[] sorted = new Stop[nearest.size];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = stops[nearest.heapStop[0]];
+            nearest.removeFarthest();
+        }
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    private void findKNearest(int node, double tLatRad, double tLonRad, KNearest nearest) {
+        if (rightChild[node] == -1) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                nearest.offer(i, Coord.haversine(tLatRad, tLonRad, latRad[i], lonRad[i]));
+            }
             return;
         }
 
-        if (node.stops != null) {
-            // It's a leaf node, check all stops
-            for (Stop s : node.stops) {
-                double dist = Coord.distance(target.getCoord(), s.getCoord());
-                if (dist <= radiusKm) {
-                    result.add(s);
+        // visit the closest child first so that the other one is more likely to be
+        // pruned
+        int left = node + 1;
+        int right = rightChild[node];
+        double leftDist = Coord.haversine(tLatRad, tLonRad, centerLatRad[left], centerLonRad[left]) - radius[left];
+        double rightDist = Coord.haversine(tLatRad, tLonRad, centerLatRad[right], centerLonRad[right])
+                - radius[right];
+        int first = (leftDist <= rightDist) ? left : right;
+        int second = (leftDist <= rightDist) ? right : left;
+        double secondDist = Math.max(leftDist, rightDist);
+
+        if (!nearest.isFull() || Math.min(leftDist, rightDist) < nearest.farthestDistance()) {
+            findKNearest(first, tLatRad, tLonRad, nearest);
+        }
+        if (!nearest.isFull() || secondDist < nearest.farthestDistance()) {
+            findKNearest(second, tLatRad, tLonRad, nearest);
+        }
+    }
+
+    /**
+     * Bounded max-heap of the k closest stops found so far, by distance.
+     */
+    private static class KNearest {
+        final int[] heapStop;
+        final double[] heapDist;
+        int size = 0;
+
+        KNearest(int k) {
+            heapStop = new int[k];
+            heapDist = new double[k];
+        }
+
+        boolean isFull() {
+            return size == heapStop.length;
+        }
+
+        double farthestDistance() {
+            return heapDist[0];
+        }
+
+        void offer(int stop, double dist) {
+            if (!isFull()) {
+                // sift up
+                int i = size++;
+                while (i > 0 && heapDist[(i - 1) / 2] < dist) {
+                    heapStop[i] = heapStop[(i - 1) / 2];
+                    heapDist[i] = heapDist[(i - 1) / 2];
+                    i = (i - 1) / 2;
                 }
+                heapStop[i] = stop;
+                heapDist[i] = dist;
+            } else if (dist < heapDist[0]) {
+                siftDown(stop, dist);
             }
-            return;
         }
 
-        // Otherwise we are in an internal node: we check both children if necessary
-        if (node.leftChild != null) {
-            double leftDist = Coord.distance(target.getCoord(), node.leftChild.center);
-            // Check if the closest point of left child is within the radius
-            if (leftDist - node.leftChild.radius <= radiusKm) {
-                findStopsWithinRadius(node.leftChild, target, radiusKm, result);
+        void removeFarthest() {
+            size--;
+            if (size > 0) {
+                siftDown(heapStop[size], heapDist[size]);
             }
         }
-        if (node.rightChild != null) {
-            double rightDist = Coord.distance(target.getCoord(), node.rightChild.center);
-            // Check if the closest point of right child is within the radius
-            if (rightDist - node.rightChild.radius <= radiusKm) {
-                findStopsWithinRadius(node.rightChild, target, radiusKm, result);
+
+        /**
+         * Replaces the root by the given stop and restores the heap.
+         */
+        private void siftDown(int stop, double dist) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heapDist[child + 1] > heapDist[child]) {
+                    child++;
+                }
+                if (heapDist[child] <= dist) {
+                    break;
+                }
+                heapStop[i] = heapStop[child];
+                heapDist[i] = heapDist[child];
+                i = child;
             }
-        }        
-    }    
-}
+            heapStop[i] = stop;
+            heapDist[i] = dist;
+        }
+    }
+
+    // -----------------------------------------------------
+    // Bulk radius self-join
+    // -----------------------------------------------------
+
+    // number of consecutive stops searched by a single fork-join task
+    private static final int JOIN_BLOCK_SIZE = 256;
+
+    /**
+     * Finds, for every stop of stops (which must be the stops of this tree, stops[i]
+     * having the index i), the other stops within radiusKm, and returns the
+     * corresponding footpaths.
+     *
+     * The stops are searched in parallel by blocks of consecutive indices. The
+     * neighbours of each stop are sorted by index, so that the graph doesn't
+     * depend on the shape of the tree.
+     */
+    public FootpathGraph findAllFootpathsWithinRadius(final Stop[] stops, final double radiusKm) {
+        // position of each stop in the tree
+        int[] treePos = new int[stops.length];
+        for (int i = 0; i < this.stops.length; i++) {
+            treePos[this.stops[i].getIndex()] = i;
+        }
+
+        int nBlocks = (stops.length + JOIN_BLOCK_SIZE - 1) / JOIN_BLOCK_SIZE;
+        JoinBlock[] blocks = new JoinBlock[nBlocks];
+        ForkJoinPool.commonPool().invoke(new JoinTask(this, treePos, radiusKm, blocks, 0, nBlocks));
+
+        int[] outStart = new int[stops.length + 1];
+        for (int b = 0; b < nBlocks; b++) {
+            int firstStopIdx = b * JOIN_BLOCK_SIZE;
+            for (int i = 0; i < blocks[b].counts.length; i++) {
+                outStart[firstStopIdx + i + 1] = outStart[firstStopIdx + i] + blocks[b].counts[i];
+            }
+        }
+
+        int[] outStop = new int[outStart[stops.length]];
+        int[] outDuration = new int[outStop.length];
+        for (int b = 0; b < nBlocks; b++) {
+            int pos = outStart[b * JOIN_BLOCK_SIZE];
+            System.arraycopy(blocks[b].stops, 0, outStop, pos, blocks[b].size);
+            System.arraycopy(blocks[b].durations, 0, outDuration, pos, blocks[b].size);
+            blocks[b] = null;
+        }
+
+        return new FootpathGraph(outStart, outStop, outDuration);
+    }
+
+    /**
+     * Footpaths found for a block of consecutive stops: counts[i] footpaths for
+     * each stop i of the block, one stop after the other.
+     */
+    private static class JoinBlock {
+        final int[] counts;
+        int[] stops = new int[64];
+        int[] durations = new int[64];
+        int size = 0;
+
+        JoinBlock(int nStops) {
+            this.counts = new int[nStops];
+        }
+
+        void add(int stopIdx, int duration) {
+            if (size == stops.length) {
+                stops = Arrays.copyOf(stops, size * 2);
+                durations = Arrays.copyOf(durations, size * 2);
+            }
+            stops[size] = stopIdx;
+            durations[size] = duration;
+            size++;
+        }
+
+        /**
+         * Insertion sort of the footpaths from..size by stop index.
+         */
+        void sortFrom(int from) {
+            for (int i = from + 1; i < size; i++) {
+                int stop = stops[i];
+                int duration = durations[i];
+                int j = i - 1;
+                while (j >= from && stops[j] > stop) {
+                    stops[j + 1] = stops[j];
+                    durations[j + 1] = durations[j];
+                    j--;
+                }
+                stops[j + 1] = stop;
+                durations[j + 1] = duration;
+            }
+        }
+    }
+
+    /**
+     * Searches the blocks fromBlock..toBlock of the tree. The tasks are never
+     * serialized, the tree and the blocks are transient.
+     */
+    private static class JoinTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
+        private final transient BallTree tree;
+        private final int[] treePos;
+        private final double radiusKm;
+        private final transient JoinBlock[] blocks;
+        private final int fromBlock;
+        private final int toBlock;
+
+        JoinTask(BallTree tree, int[] treePos, double radiusKm, JoinBlock[] blocks, int fromBlock, int toBlock) {
+            this.tree = tree;
+            this.treePos = treePos;
+            this.radiusKm = radiusKm;
+            this.blocks = blocks;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock == fromBlock) {
+                return; // no stop at all
+            }
+            if (toBlock - fromBlock > 1) {
+                int mid = (fromBlock + toBlock) >>> 1;
+                invokeAll(new JoinTask(tree, treePos, radiusKm, blocks, fromBlock, mid),
+                        new JoinTask(tree, treePos, radiusKm, blocks, mid, toBlock));
+                return;
+            }
+
+            int firstStopIdx = fromBlock * JOIN_BLOCK_SIZE;
+            int lastStopIdx = Math.min(treePos.length, firstStopIdx + JOIN_BLOCK_SIZE);
+            JoinBlock block = new JoinBlock(lastStopIdx - firstStopIdx);
+            int[] stack = new int[64];
+            for (int i = firstStopIdx; i < lastStopIdx; i++) {
+                int sizeBefore = block.size;
+                stack = tree.joinWithinRadius(treePos[i], radiusKm, block, stack);
+                block.sortFrom(sizeBefore);
+                block.counts[i - firstStopIdx] = block.size - sizeBefore;
+            }
+            blocks[fromBlock] = block;
+        }
+    }
+
+    /**
+     * Same traversal as findStopsWithinRadius, but adds the footpaths from the
+     * stop at position source to the stops found (except itself) to the block.
+     *
+     * @return the stack, which may have been grown
+     */
+    private int[] joinWithinRadius(int source, double radiusKm, JoinBlock block, int[] stack) {
+        double sLatRad = latRad[source];
+        double sLonRad = lonRad[source];
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+
+            if (Coord.haversine(sLatRad, sLonRad, centerLatRad[node], centerLonRad[node]) - radius[node] > radiusKm) {
+                continue;
+            }
+
+            if (rightChild[node] == -1) {
+                for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                    double dist = Coord.haversine(sLatRad, sLonRad, latRad[i], lonRad[i]);
+                    if (dist <= radiusKm && i != source) {
+                        block.add(stops[i].getIndex(), Footpath.travelTimeForDistance(dist));
+                    }
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = rightChild[node];
+                stack[top++] = node + 1;
+            }
+        }
+
+        return stack;
+    }
+}
@@ -0,0 +1,464 @@
+package projetalgo;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * Runs a file of queries without any interaction, on a pool of worker threads
+ * sharing the same Data, and writes one result per query as CSV or JSON lines
+ * (see JourneyWriter).
+ *
+ * The query file is a CSV file with one query per line (empty lines, lines
+ * starting with '#' and a header line starting with "id" are skipped):
+ *
+ * id,origins,destinations,departure,solver[,criteria]
+ *
+ * where origins and destinations are stop ids separated by '|', departure is
+ * in HH:MM:SS, solver is "ea" (earliest arrival) or "mc" (multicriteria), and
+ * criteria is "footpaths" (default) or "trams" for the multicriteria solver,
+ * which only accepts one origin and one destination.
+ *
+ * The queries are read by windows of a bounded size, so that the file is
+ * streamed, and run on worker threads. The multicriteria queries share the
+ * same solver, each one borrowing its own workspace. The earliest arrival
+ * queries of a window are sorted by departure time and run by batches of 64 in
+ * a single scan by the MultiQuerySolver of the worker, so that each scan
+ * covers a short time range: they are given the time of that scan as latency.
+ * The results are written in the order of the queries.
+ */
+public class BatchRunner {
+    private static final int BATCH_SIZE = MultiQuerySolver.MAX_QUERIES;
+    private static final int WINDOW_SIZE_PER_WORKER = 16 * BATCH_SIZE;
+
+    private final Data data;
+    private final Data multiCritData;
+    private final int nWorkers;
+    private final JourneyWriter.Format format;
+    private final JourneyWriter.Detail detail;
+    private final SearchHorizon multiCritHorizon;
+
+    /**
+     * @param data             the data of the earliest arrival queries
+     * @param multiCritData    the data of the multicriteria queries
+     * @param nWorkers         the number of worker threads
+     * @param format           the format of the results
+     * @param detail           whether the journeys are summarized or written
+     *                         with their legs
+     * @param multiCritHorizon the horizon of the multicriteria queries
+     */
+    public BatchRunner(Data data, Data multiCritData, int nWorkers, JourneyWriter.Format format,
+            JourneyWriter.Detail detail, SearchHorizon multiCritHorizon) {
+        if (nWorkers < 1) {
+            throw new IllegalArgumentException("The number of workers must be positive: " + nWorkers);
+        }
+
+        this.data = data;
+        this.multiCritData = multiCritData;
+        this.nWorkers = nWorkers;
+        this.format = format;
+        this.detail = detail;
+        this.multiCritHorizon = multiCritHorizon;
+    }
+
+    // -----------------------------------------------------
+    // Queries and results
+    // -----------------------------------------------------
+
+    private static class Query {
+        final String id;
+        final String solver; // as written in the query file
+        final List<String> pDepIds;
+        final List<String> pArrIds;
+        final int tDep;
+        final boolean multiCrit;
+        final String criteria; // null for the earliest arrival queries
+        final String error; // null if the query is valid
+
+        Query(String id, String solver, List<String> pDepIds, List<String> pArrIds, int tDep, boolean multiCrit,
+                String criteria, String error) {
+            this.id = id;
+            this.solver = solver;
+            this.pDepIds = pDepIds;
+            this.pArrIds = pArrIds;
+            this.tDep = tDep;
+            this.multiCrit = multiCrit;
+            this.criteria = criteria;
+            this.error = error;
+        }
+
+        static Query invalid(String[] line, String error) {
+            String solver = (line.length > 4) ? line[4].strip().toLowerCase() : "";
+            return new Query(line[0].strip(), solver, List.of(), List.of(), -1, false, null, error);
+        }
+    }
+
+    /**
+     * Queries read ahead, run by several tasks storing their results at the
+     * same indices of results.
+     */
+    private static class Window {
+        final List<Query> queries;
+        final JourneyWriter.Result[] results;
+        final List<Future<?>> tasks = new ArrayList<>();
+
+        Window(List<Query> queries) {
+            this.queries = queries;
+            this.results = new JourneyWriter.Result[queries.size()];
+        }
+    }
+
+    /**
+     * Counts and latencies of a run.
+     */
+    public static class Stats {
+        private int ok = 0;
+        private int unreachable = 0;
+        private int errors = 0;
+        private long[] latencies = new long[1024]; // in nanoseconds, in query order
+        private long wallNanos;
+
+        private void add(JourneyWriter.Result result) {
+            switch (result.getStatus()) {
+                case OK -> ok++;
+                case UNREACHABLE -> unreachable++;
+                case ERROR -> errors++;
+            }
+
+            int n = getQueriesCount() - 1;
+            if (n == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[n] = result.getLatencyNanos();
+        }
+
+        public int getQueriesCount() {
+            return ok + unreachable + errors;
+        }
+
+        public int getOkCount() {
+            return ok;
+        }
+
+        public int getUnreachableCount() {
+            return unreachable;
+        }
+
+        public int getErrorsCount() {
+            return errors;
+        }
+
+        /**
+         * Returns the latency (in milliseconds) below which the given fraction of
+         * the queries ran.
+         */
+        public double getLatencyPercentileMs(double fraction) {
+            int n = getQueriesCount();
+            if (n == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(fraction * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, rank))] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            double wallSeconds = wallNanos / 1_000_000_000.0;
+            return String.format(Locale.ROOT,
+                    "%d queries (%d ok, %d unreachable, %d errors) in %.2f s (%.1f queries/s), latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    getQueriesCount(), ok, unreachable, errors, wallSeconds,
+                    (wallSeconds > 0) ? getQueriesCount() / wallSeconds : 0.0,
+                    getLatencyPercentileMs(0.5), getLatencyPercentileMs(0.99), getLatencyPercentileMs(1.0));
+        }
+    }
+
+    // -----------------------------------------------------
+    // Running
+    // -----------------------------------------------------
+
+    /**
+     * Runs all the queries of the queries file and writes their results to the
+     * output file.
+     */
+    public Stats run(Path queries, Path output) throws IOException, CsvValidationException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+
+        MultiCritSolver multiCritSolver = new MultiCritSolver(multiCritData);
+        multiCritSolver.setHorizon(multiCritHorizon);
+        // a MultiQuerySolver cannot be shared: one per worker thread
+        ThreadLocal<MultiQuerySolver> multiQuerySolver = ThreadLocal.withInitial(() -> new MultiQuerySolver(data));
+
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        try (CSVReader reader = new CSVReader(new FileReader(queries.toFile()));
+                JourneyWriter writer = new JourneyWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8),
+                        format, detail)) {
+            // the next window is read while the previous one runs
+            Deque<Window> inFlight = new ArrayDeque<>();
+            int windowSize = nWorkers * WINDOW_SIZE_PER_WORKER;
+            List<Query> window = new ArrayList<>(windowSize);
+            int lineNumber = 0;
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                lineNumber++;
+                if (isSkipped(line)) {
+                    continue;
+                }
+
+                window.add(parseQuery(line, lineNumber));
+                if (window.size() == windowSize) {
+                    inFlight.add(submitWindow(window, executor, multiQuerySolver, multiCritSolver));
+                    window = new ArrayList<>(windowSize);
+                    if (inFlight.size() > 1) {
+                        writeWindow(inFlight.poll(), writer, stats);
+                    }
+                }
+            }
+            if (!window.isEmpty()) {
+                inFlight.add(submitWindow(window, executor, multiQuerySolver, multiCritSolver));
+            }
+            while (!inFlight.isEmpty()) {
+                writeWindow(inFlight.poll(), writer, stats);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch run interrupted", e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IOException(e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        stats.wallNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private static boolean isSkipped(String[] line) {
+        String first = line[0].strip();
+        return (line.length == 1 && first.isEmpty()) || first.startsWith("#") || first.equals("id");
+    }
+
+    private static List<String> splitStopIds(String stopIds) {
+        List<String> ids = new ArrayList<>();
+        for (String id : stopIds.split("\\|")) {
+            if (!id.isBlank()) {
+                ids.add(id.strip());
+            }
+        }
+        return ids;
+    }
+
+    private static Query parseQuery(String[] line, int lineNumber) {
+        String id = line[0].strip();
+        if (line.length < 5 || line.length > 6) {
+            return Query.invalid(line, "line " + lineNumber + ": expected 5 or 6 fields, got " + line.length);
+        }
+
+        List<String> pDepIds = splitStopIds(line[1]);
+        List<String> pArrIds = splitStopIds(line[2]);
+        if (pDepIds.isEmpty() || pArrIds.isEmpty()) {
+            return Query.invalid(line, "line " + lineNumber + ": no origin or no destination");
+        }
+
+        int tDep = TimeConversion.toSeconds(line[3].strip());
+        if (tDep == -1) {
+            return Query.invalid(line, "line " + lineNumber + ": invalid departure time, expected HH:MM:SS");
+        }
+
+        switch (line[4].strip().toLowerCase()) {
+            case "ea" -> {
+                return new Query(id, "ea", pDepIds, pArrIds, tDep, false, null, null);
+            }
+            case "mc" -> {
+                String criteria = (line.length == 6 && !line[5].isBlank()) ? line[5].strip().toLowerCase()
+                        : "footpaths";
+                if (!criteria.equals("footpaths") && !criteria.equals("trams")) {
+                    return Query.invalid(line, "line " + lineNumber + ": unknown criteria '" + criteria + "'");
+                }
+                if (pDepIds.size() != 1 || pArrIds.size() != 1) {
+                    return Query.invalid(line,
+                            "line " + lineNumber + ": the multicriteria solver takes one origin and one destination");
+                }
+                return new Query(id, "mc", pDepIds, pArrIds, tDep, true, criteria, null);
+            }
+            default -> {
+                return Query.invalid(line, "line " + lineNumber + ": unknown solver '" + line[4].strip() + "'");
+            }
+        }
+    }
+
+    private static CriteriaDescriptor criteriaDescriptor(String criteria) {
+        return criteria.equals("trams") ? CriteriaDescriptor.tramsCount() : CriteriaDescriptor.footpathsCount();
+    }
+
+    /**
+     * Returns the stop ids of the list missing from the given data, null if
+     * there is none.
+     */
+    private static String findUnknownStop(Data data, List<String> stopIds) {
+        for (String stopId : stopIds) {
+            if (!data.stopIdToStop.containsKey(stopId)) {
+                return stopId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Submits the tasks running the queries: one per multicriteria query and one
+     * per batch of earliest arrival queries. The results of the invalid queries
+     * are stored right away.
+     */
+    private Window submitWindow(List<Query> queries, ExecutorService executor,
+            ThreadLocal<MultiQuerySolver> multiQuerySolver, MultiCritSolver multiCritSolver) {
+        Window window = new Window(queries);
+        List<Integer> earliestArrivalQueries = new ArrayList<>();
+        for (int k = 0; k < queries.size(); k++) {
+            long start = System.nanoTime();
+            Query query = queries.get(k);
+            String error = checkQuery(query);
+            if (error != null) {
+                window.results[k] = error(query, System.nanoTime() - start, error);
+            } else if (query.multiCrit) {
+                int index = k;
+                window.tasks.add(executor.submit(() -> {
+                    window.results[index] = runMultiCritQuery(query, multiCritSolver);
+                }));
+            } else {
+                earliestArrivalQueries.add(k);
+            }
+        }
+
+        earliestArrivalQueries.sort(Comparator.comparingInt(k -> queries.get(k).tDep));
+        for (int from = 0; from < earliestArrivalQueries.size(); from += BATCH_SIZE) {
+            List<Integer> batch = earliestArrivalQueries.subList(from,
+                    Math.min(from + BATCH_SIZE, earliestArrivalQueries.size()));
+            window.tasks.add(executor.submit(() -> runEarliestArrivalQueries(queries, batch, multiQuerySolver.get(),
+                    window.results)));
+        }
+        return window;
+    }
+
+    /**
+     * Returns why the query cannot be run, null if it can.
+     */
+    private String checkQuery(Query query) {
+        if (query.error != null) {
+            return query.error;
+        }
+
+        Data queryData = query.multiCrit ? multiCritData : data;
+        String unknownStop = findUnknownStop(queryData, query.pDepIds);
+        if (unknownStop == null) {
+            unknownStop = findUnknownStop(queryData, query.pArrIds);
+        }
+        return (unknownStop == null) ? null : "unknown stop '" + unknownStop + "'";
+    }
+
+    private JourneyWriter.Result runMultiCritQuery(Query query, MultiCritSolver multiCritSolver) {
+        long start = System.nanoTime();
+        try {
+            List<Journey> journeys = new ArrayList<>();
+            List<String> criteria = new ArrayList<>();
+            for (MultiCritJourney journey : multiCritSolver.solve(criteriaDescriptor(query.criteria),
+                    query.pDepIds.get(0), query.pArrIds.get(0), query.tDep)) {
+                journeys.add(journey.getJourney());
+                criteria.add(journey.getDescriptor().format(journey.getCriteria()));
+            }
+            if (journeys.isEmpty() && query.pDepIds.get(0).equals(query.pArrIds.get(0))) {
+                journeys.add(new Journey(query.tDep, query.tDep, List.of()));
+                criteria.add(null);
+            }
+
+            return new JourneyWriter.Result(query.id, query.solver, status(journeys), query.tDep, journeys,
+                    criteria, System.nanoTime() - start, null);
+        } catch (RuntimeException e) {
+            return error(query, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    /**
+     * Runs the earliest arrival queries at the given indices of queries in a
+     * single scan, and stores their results at the same indices of results.
+     */
+    private static void runEarliestArrivalQueries(List<Query> queries, List<Integer> indices,
+            MultiQuerySolver multiQuerySolver, JourneyWriter.Result[] results) {
+        long start = System.nanoTime();
+        List<List<String>> pDepIds = new ArrayList<>(indices.size());
+        List<List<String>> pArrIds = new ArrayList<>(indices.size());
+        int[] tDeps = new int[indices.size()];
+        for (int q = 0; q < indices.size(); q++) {
+            Query query = queries.get(indices.get(q));
+            pDepIds.add(query.pDepIds);
+            pArrIds.add(query.pArrIds);
+            tDeps[q] = query.tDep;
+        }
+
+        try {
+            List<Optional<Journey>> journeys = multiQuerySolver.solveJourneys(pDepIds, pArrIds, tDeps);
+            long latencyNanos = System.nanoTime() - start;
+            for (int q = 0; q < indices.size(); q++) {
+                Query query = queries.get(indices.get(q));
+                List<Journey> journeysOfQuery = journeys.get(q).map(List::of).orElse(List.of());
+                results[indices.get(q)] = new JourneyWriter.Result(query.id, query.solver, status(journeysOfQuery),
+                        query.tDep, journeysOfQuery, null, latencyNanos, null);
+            }
+        } catch (RuntimeException e) {
+            long latencyNanos = System.nanoTime() - start;
+            for (int index : indices) {
+                results[index] = error(queries.get(index), latencyNanos, e.toString());
+            }
+        }
+    }
+
+    private static JourneyWriter.Status status(List<Journey> journeys) {
+        return journeys.isEmpty() ? JourneyWriter.Status.UNREACHABLE : JourneyWriter.Status.OK;
+    }
+
+    private static JourneyWriter.Result error(Query query, long latencyNanos, String message) {
+        return new JourneyWriter.Result(query.id, query.solver, JourneyWriter.Status.ERROR, query.tDep, List.of(),
+                null, latencyNanos, message);
+    }
+
+    // -----------------------------------------------------
+    // Writing
+    // -----------------------------------------------------
+
+    /**
+     * Waits for the tasks of the window and writes its results.
+     */
+    private static void writeWindow(Window window, JourneyWriter writer, Stats stats)
+            throws IOException, InterruptedException, ExecutionException {
+        for (Future<?> task : window.tasks) {
+            task.get();
+        }
+        for (JourneyWriter.Result result : window.results) {
+            stats.add(result);
+            writer.write(result);
+        }
+    }
+
+}
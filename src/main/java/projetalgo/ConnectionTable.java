@@ -0,0 +1,135 @@
+package projetalgo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage of all the connections of a timetable.
+ *
+ * Each connection is identified by its index i, and its attributes are stored
+ * in parallel int arrays (pDepIdx[i], pArrIdx[i], tDep[i], ...), sorted by
+ * increasing departure time. The stop, trip and route indices refer to the
+ * lookup tables stops, tripIds and routeInfos.
+ *
+ * Scanning the connections in order thus only reads a few int arrays
+ * sequentially instead of following several references per connection.
+ */
+public class ConnectionTable {
+    final int[] pDepIdx; // departure stop index
+    final int[] pArrIdx; // arrival stop index
+    final int[] tDep; // departure time
+    final int[] tArr; // arrival time
+    final int[] tripIdx;
+    final int[] routeIdx;
+
+    final Stop[] stops;
+    final String[] tripIds;
+    final RouteInfo[] routeInfos;
+
+    ConnectionTable(int[] pDepIdx, int[] pArrIdx, int[] tDep, int[] tArr, int[] tripIdx, int[] routeIdx,
+            Stop[] stops, String[] tripIds, RouteInfo[] routeInfos) {
+        this.pDepIdx = pDepIdx;
+        this.pArrIdx = pArrIdx;
+        this.tDep = tDep;
+        this.tArr = tArr;
+        this.tripIdx = tripIdx;
+        this.routeIdx = routeIdx;
+        this.stops = stops;
+        this.tripIds = tripIds;
+        this.routeInfos = routeInfos;
+    }
+
+    /**
+     * Builds the table from connections that are already sorted by increasing
+     * departure time. The stops must already have their dense index (stops[i]
+     * has index i).
+     */
+    static ConnectionTable fromSortedConnections(List<Connection> connections, Map<String, Stop> stopIdToStop,
+            Stop[] stops) {
+        Map<String, Integer> tripIdToIdx = new HashMap<>();
+        Map<RouteInfo, Integer> routeInfoToIdx = new HashMap<>();
+        for (Connection c : connections) {
+            tripIdToIdx.putIfAbsent(c.getTripId(), tripIdToIdx.size());
+            routeInfoToIdx.putIfAbsent(c.getRouteInfo(), routeInfoToIdx.size());
+        }
+
+        String[] tripIds = new String[tripIdToIdx.size()];
+        tripIdToIdx.forEach((tripId, idx) -> tripIds[idx] = tripId);
+        RouteInfo[] routeInfos = new RouteInfo[routeInfoToIdx.size()];
+        routeInfoToIdx.forEach((routeInfo, idx) -> routeInfos[idx] = routeInfo);
+
+        int size = connections.size();
+        ConnectionTable table = new ConnectionTable(new int[size], new int[size], new int[size], new int[size],
+                new int[size], new int[size], stops, tripIds, routeInfos);
+        for (int i = 0; i < connections.size(); i++) {
+            Connection c = connections.get(i);
+            // look the stops up by id so that a stop loaded twice resolves to the one kept
+            // in stopIdToStop
+            table.pDepIdx[i] = stopIdToStop.get(c.getPDep().getId()).getIndex();
+            table.pArrIdx[i] = stopIdToStop.get(c.getPArr().getId()).getIndex();
+            table.tDep[i] = c.getTDep();
+            table.tArr[i] = c.getTArr();
+            table.tripIdx[i] = tripIdToIdx.get(c.getTripId());
+            table.routeIdx[i] = routeInfoToIdx.get(c.getRouteInfo());
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns a table with only the connections at the given indices, which must
+     * be increasing so that the result stays sorted by departure time. The lookup
+     * tables are shared with this table.
+     */
+    ConnectionTable select(int[] selection) {
+        int size = selection.length;
+        ConnectionTable table = new ConnectionTable(new int[size], new int[size], new int[size], new int[size],
+                new int[size], new int[size], stops, tripIds, routeInfos);
+        for (int i = 0; i < size; i++) {
+            int j = selection[i];
+            table.pDepIdx[i] = pDepIdx[j];
+            table.pArrIdx[i] = pArrIdx[j];
+            table.tDep[i] = tDep[j];
+            table.tArr[i] = tArr[j];
+            table.tripIdx[i] = tripIdx[j];
+            table.routeIdx[i] = routeIdx[j];
+        }
+        return table;
+    }
+
+    public RouteInfo getRouteInfo(int i) {
+        return routeInfos[routeIdx[i]];
+    }
+
+    public int size() {
+        return tDep.length;
+    }
+
+    public int getTDep(int i) {
+        return tDep[i];
+    }
+
+    public int getTArr(int i) {
+        return tArr[i];
+    }
+
+    public Stop getPDep(int i) {
+        return stops[pDepIdx[i]];
+    }
+
+    public Stop getPArr(int i) {
+        return stops[pArrIdx[i]];
+    }
+
+    /**
+     * Returns a Connection object for the i-th connection. The object is created
+     * on demand, so this should only be used outside of the scanning loops (e.g.
+     * to store or display a movement).
+     */
+    public Connection get(int i) {
+        return new Connection(tripIds[tripIdx[i]], routeInfos[routeIdx[i]], stops[pDepIdx[i]],
+                stops[pArrIdx[i]], tDep[i], tArr[i]);
+    }
+
+}
@@ -0,0 +1,124 @@
+package projetalgo;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Displays the journeys found by the solvers on the console (with ANSI codes),
+ * and asks the user to choose between several journeys. The solvers themselves
+ * never read from or write to the console.
+ */
+public class ConsoleRenderer {
+    private final PrintStream out;
+
+    public ConsoleRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Displays instructions for completing the journey.
+     */
+    private void printInstructions(List<Leg> legs) {
+        for (Leg leg : legs) {
+            Stop pDep = leg.getPDep();
+            Stop pArr = leg.getPArr();
+            String depTimeStr = TimeConversion.fromSeconds(leg.getTDep());
+            String arrTimeStr = TimeConversion.fromSeconds(leg.getTArr());
+
+            switch (leg.getMovement()) {
+                case Footpath footpath -> {
+                    String duration = TimeConversion.formatDuration(footpath.getTravelTime());
+                    out.println(
+                        "From " + AinsiCode.BOLD + AinsiCode.RED + pDep.getName() + AinsiCode.RESET + " (" + pDep.getTransportOperatorStop() +
+                        "), leave on foot at " + AinsiCode.BOLD + AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to reach " + AinsiCode.BOLD +
+                        AinsiCode.RED + pArr.getName() + AinsiCode.RESET + " (" + pArr.getTransportOperatorStop() + ") by " + AinsiCode.BOLD +
+                        AinsiCode.RED + arrTimeStr + AinsiCode.RESET + ". Expect a walk of around " + AinsiCode.BOLD + AinsiCode.RED + duration + AinsiCode.RESET + "."
+                    );
+                }
+
+                case TripLeg tripLeg -> {
+                    out.println(
+                        "Take " + AinsiCode.BOLD + AinsiCode.RED + tripLeg.getRouteInfo().toString() + AinsiCode.RESET + " from "
+                        + AinsiCode.BOLD + AinsiCode.RED + pDep.getName() + AinsiCode.RESET + " at " + AinsiCode.BOLD +
+                        AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to " + AinsiCode.BOLD + AinsiCode.RED +
+                        pArr.getName() + AinsiCode.RESET + " (" + arrTimeStr + ")."
+                    );
+                }
+
+                default -> throw new IllegalStateException("Unexpected movement: " + leg.getMovement());
+            }
+        }
+    }
+
+    /**
+     * Displays the directions of the journey.
+     */
+    public void printJourney(Journey journey) {
+        List<Leg> legs = journey.getLegs();
+        if (legs.isEmpty()) {
+            out.println("You are already at your destination");
+            return;
+        }
+
+        String pDepName = legs.get(0).getPDep().getName();
+        String pArrName = legs.get(legs.size() - 1).getPArr().getName();
+
+        out.println(
+                AinsiCode.BOLD + "\nHere are the directions for the shortest route from " +
+                        AinsiCode.RED + pDepName + AinsiCode.RESET + AinsiCode.BOLD +
+                        " to " + AinsiCode.RED + pArrName + AinsiCode.RESET + AinsiCode.BOLD
+                        +
+                        ", departing at " + AinsiCode.RED + TimeConversion.fromSeconds(journey.getTDep()) +
+                        AinsiCode.RESET + AinsiCode.BOLD + " :\n" + AinsiCode.RESET);
+
+        printInstructions(legs);
+
+        out.println(
+                AinsiCode.BOLD + AinsiCode.UNDERLINE + AinsiCode.RED + "You will arrive at " + pArrName
+                        + " at " + TimeConversion.fromSeconds(journey.getTArr()) + AinsiCode.RESET);
+    }
+
+    /**
+     * Displays the result of an earliest arrival query (see Solver.solve).
+     */
+    public void printEarliestArrival(Optional<Journey> journey) {
+        journey.ifPresentOrElse(this::printJourney, () -> out.println("unreachable target"));
+    }
+
+    /**
+     * Displays the characteristics of the journeys (see MultiCritSolver.solve)
+     * and prompts the user to select one if at least one journey exists. If no
+     * journey exists, an empty optional is returned.
+     */
+    public Optional<MultiCritJourney> promptJourney(List<MultiCritJourney> journeys) {
+        if (journeys.isEmpty()) {
+            return Optional.empty();
+        }
+
+        out.println("Possible journeys:");
+        for (int i = 0; i < journeys.size(); i++) {
+            MultiCritJourney journey = journeys.get(i);
+            out.printf(" [%d] arrives at %s\n", i, TimeConversion.fromSeconds(journey.getTArr()));
+            out.printf(" %s\n\n", journey.getDescriptor().format(journey.getCriteria()));
+        }
+
+        int choice = -1;
+        while (true) {
+            try {
+                choice = Integer
+                        .parseInt(InteractiveConsole.ask("Enter the number of the journey you want to choose: "));
+                if (choice >= 0 && choice < journeys.size()) {
+                    break;
+                } else {
+                    out.println("Invalid input, please enter a number from the list.");
+                }
+            } catch (NumberFormatException e) {
+                out.println("Invalid input, please enter a number.");
+            }
+        }
+
+        return Optional.of(journeys.get(choice));
+    }
+
+}
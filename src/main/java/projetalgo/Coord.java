@@ -25,11 +25,15 @@ public class Coord {
     }
 
     public double distanceTo(Coord other) {
-        double lat1 = Math.toRadians(this.lat());
-        double lon1 = Math.toRadians(this.lon());
-        double lat2 = Math.toRadians(other.lat());
-        double lon2 = Math.toRadians(other.lon());
-    
+        return haversine(Math.toRadians(this.lat()), Math.toRadians(this.lon()), Math.toRadians(other.lat()),
+                Math.toRadians(other.lon()));
+    }
+
+    /**
+     * Haversine distance in km between two points given by their latitude and
+     * longitude in radians.
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
         double dLat = lat2 - lat1;
         double dLon = lon2 - lon1;
     
@@ -0,0 +1,207 @@
+package projetalgo;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Criteria optimized by MultiCritSolver, besides the arrival time: each
+ * criterion counts the movements of some kinds (footpaths and/or connections
+ * of some transport types) taken by a journey, and the less the better.
+ *
+ * The criteria of a journey are packed in a single long, each counter in a
+ * field of the same width followed by a guard bit, so that adding a movement,
+ * comparing and checking the dominance of two journeys are a few arithmetic
+ * operations on longs (SWAR) and never allocate.
+ */
+public class CriteriaDescriptor {
+    private static final int MAX_COUNTERS = 8;
+
+    private static final CriteriaDescriptor FOOTPATHS_COUNT = of(Counter.footpaths("footpathsCount"));
+    private static final CriteriaDescriptor TRAMS_COUNT = of(Counter.connections("tramsCount", TransportType.TRAM));
+
+    /**
+     * A criterion: the number of footpaths and/or connections of some transport
+     * types taken.
+     */
+    public static class Counter {
+        private final String name;
+        private final boolean countsFootpaths;
+        private final Set<TransportType> transportTypes;
+
+        private Counter(String name, boolean countsFootpaths, Set<TransportType> transportTypes) {
+            this.name = name;
+            this.countsFootpaths = countsFootpaths;
+            this.transportTypes = transportTypes;
+        }
+
+        /**
+         * Counts the footpaths.
+         */
+        public static Counter footpaths(String name) {
+            return new Counter(name, true, EnumSet.noneOf(TransportType.class));
+        }
+
+        /**
+         * Counts the connections of the given transport types.
+         */
+        public static Counter connections(String name, TransportType first, TransportType... others) {
+            return new Counter(name, false, EnumSet.of(first, others));
+        }
+
+        /**
+         * Counts the footpaths and the connections of the given transport types.
+         */
+        public static Counter movements(String name, TransportType first, TransportType... others) {
+            return new Counter(name, true, EnumSet.of(first, others));
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Counter[] counters;
+    private final int width; // bits of each field, including the guard bit
+    private final long guards; // the guard bit of each field
+    private final long footpathIncrement;
+    private final long[] connectionIncrement; // by transport type
+
+    private CriteriaDescriptor(Counter[] counters) {
+        if (counters.length == 0 || counters.length > MAX_COUNTERS) {
+            throw new IllegalArgumentException(
+                    "A criteria descriptor needs between 1 and " + MAX_COUNTERS + " counters: " + counters.length);
+        }
+
+        this.counters = counters.clone();
+        this.width = Math.min(32, Long.SIZE / counters.length);
+        this.connectionIncrement = new long[TransportType.values().length];
+
+        long guards = 0;
+        long footpathIncrement = 0;
+        for (int i = 0; i < counters.length; i++) {
+            long one = 1L << (i * width);
+            guards |= one << (width - 1);
+            if (counters[i].countsFootpaths) {
+                footpathIncrement += one;
+            }
+            for (TransportType transportType : counters[i].transportTypes) {
+                connectionIncrement[transportType.ordinal()] += one;
+            }
+        }
+        this.guards = guards;
+        this.footpathIncrement = footpathIncrement;
+    }
+
+    /**
+     * Returns a descriptor of the given criteria (at most 8). The more criteria,
+     * the lower the maximum value of each counter: 2^(64 / number of criteria -
+     * 1) - 1, capped at 2^31 - 1.
+     */
+    public static CriteriaDescriptor of(Counter... counters) {
+        return new CriteriaDescriptor(counters);
+    }
+
+    /**
+     * Minimizes the number of footpaths.
+     */
+    public static CriteriaDescriptor footpathsCount() {
+        return FOOTPATHS_COUNT;
+    }
+
+    /**
+     * Minimizes the number of tram connections.
+     */
+    public static CriteriaDescriptor tramsCount() {
+        return TRAMS_COUNT;
+    }
+
+    public int getCountersCount() {
+        return counters.length;
+    }
+
+    /**
+     * Returns the criteria of an empty journey.
+     */
+    public long empty() {
+        return 0L;
+    }
+
+    private long increment(Movement m) {
+        if (m instanceof Connection connection) {
+            return connectionIncrement[connection.getTransportType().ordinal()];
+        }
+        return footpathIncrement;
+    }
+
+    /**
+     * Returns the given criteria with the movement m taken.
+     *
+     * @throws ArithmeticException if a counter exceeds its maximum value
+     */
+    public long addMovement(long criteria, Movement m) {
+        return add(criteria, increment(m));
+    }
+
+    /**
+     * Same as above for a connection of the given transport type, without the
+     * Connection object.
+     */
+    public long addConnection(long criteria, TransportType transportType) {
+        return add(criteria, connectionIncrement[transportType.ordinal()]);
+    }
+
+    /**
+     * Same as above for a footpath, without the Footpath object.
+     */
+    public long addFootpath(long criteria) {
+        return add(criteria, footpathIncrement);
+    }
+
+    private long add(long criteria, long increment) {
+        long ret = criteria + increment;
+        if ((ret & guards) != 0) {
+            throw new ArithmeticException("Criteria counter overflow");
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the given criteria without the movement m (which must have been
+     * added).
+     */
+    public long removeMovement(long criteria, Movement m) {
+        return criteria - increment(m);
+    }
+
+    /**
+     * Returns the value of the i-th counter.
+     */
+    public int get(long criteria, int i) {
+        return (int) ((criteria >>> (i * width)) & ((1L << (width - 1)) - 1));
+    }
+
+    /**
+     * Returns true if the criteria c0 dominate c1: no counter of c0 is greater
+     * than c1's, and they are not equal.
+     */
+    public boolean dominates(long c0, long c1) {
+        // the guard bit of a field of (c1 | guards) - c0 stays set iff c0's counter is
+        // not greater than c1's (the counters never have their guard bit set)
+        return c0 != c1 && (((c1 | guards) - c0) & guards) == guards;
+    }
+
+    /**
+     * Returns the criteria as "name: value" pairs.
+     */
+    public String format(long criteria) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < counters.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(counters[i].name).append(": ").append(get(criteria, i));
+        }
+        return sb.toString();
+    }
+
+}
@@ -2,39 +2,275 @@ package projetalgo;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvValidationException;
 
 public class Data {
+    static final double MAX_FOOTPATH_DIST_KM = 0.5;
+
     public HashMap<String, Stop> stopIdToStop;
-    public List<Connection> connections;
+    public Stop[] stops; // indexed by Stop.getIndex()
+    // route of one of the connections passing by each stop (null if none), indexed
+    // by Stop.getIndex()
+    public RouteInfo[] stopRouteInfos;
+    public ConnectionTable connections;
+    public FootpathGraph footpaths;
+    public StopNameIndex stopNames;
+
+    /**
+     * Everything loaded from a single CsvSet. The CsvSets are loaded
+     * independently from each other and merged afterwards.
+     */
+    private static class CsvSetData {
+        final Map<String, Stop> stopIdToStop = new HashMap<>();
+        final Map<String, RouteInfo> stopIdToRouteInfo = new HashMap<>();
+        final List<Connection> connections = new ArrayList<>(); // sorted by increasing departure time
+    }
 
     /**
      * Loads all the data corresponding to all the given csvSets :
      * connections, stopIdToStop
+     *
+     * Each csvSet is loaded on its own thread, then the stops are merged and the
+     * sorted connections of all the csvSets are merged.
      */
     static public Data loadFromCSVs(CsvSet... csvSets) throws IOException, CsvValidationException {
+        List<CsvSetData> csvSetsData = new ArrayList<>();
+
+        int nThreads = Math.max(1, Math.min(csvSets.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<CsvSetData>> futures = new ArrayList<>();
+            for (CsvSet csvSet : csvSets) {
+                futures.add(executor.submit(() -> loadOneCsvSet(csvSet)));
+            }
+
+            for (Future<CsvSetData> future : futures) {
+                csvSetsData.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading of the CSV files interrupted", e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case CsvValidationException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IOException(e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
         Data data = new Data();
+
+        // merge the stops, in the order of the csvSets (a stop id loaded twice keeps
+        // the last one)
         data.stopIdToStop = new HashMap<>();
-        data.connections = new ArrayList<>();
+        Map<String, RouteInfo> stopIdToRouteInfo = new HashMap<>();
+        for (CsvSetData csvSetData : csvSetsData) {
+            for (Stop stop : csvSetData.stopIdToStop.values()) {
+                data.stopIdToStop.put(stop.getId(), stop);
+                stopIdToRouteInfo.put(stop.getId(), csvSetData.stopIdToRouteInfo.get(stop.getId()));
+            }
+        }
 
-        for (CsvSet csvSet : csvSets) {
-            data.loadOneCsvSet(csvSet);
+        // give each stop its dense index
+        data.stops = data.stopIdToStop.values().toArray(new Stop[0]);
+        data.stopRouteInfos = new RouteInfo[data.stops.length];
+        for (int i = 0; i < data.stops.length; i++) {
+            data.stops[i].setIndex(i);
+            data.stopRouteInfos[i] = stopIdToRouteInfo.get(data.stops[i].getId());
         }
+        data.stopNames = new StopNameIndex(data.stopIdToStop.values());
 
-        // sort by increasing departure time
-        data.connections.sort(Comparator.comparingInt(Connection::getTDep));
+        List<Connection> connections = mergeSortedConnections(csvSetsData);
+
+        // the Connection objects are only needed while loading, the solvers scan the
+        // columnar table
+        data.connections = ConnectionTable.fromSortedConnections(connections, data.stopIdToStop, data.stops);
+
+        data.genFootpaths(MAX_FOOTPATH_DIST_KM);
 
         return data;
     }
 
-    void loadOneCsvSet(CsvSet csvSet) throws IOException, CsvValidationException {
+    /**
+     * K-way merge of the sorted connections of each csvSet. Connections departing
+     * at the same time are taken in the order of the csvSets.
+     */
+    private static List<Connection> mergeSortedConnections(List<CsvSetData> csvSetsData) {
+        int totalSize = 0;
+        for (CsvSetData csvSetData : csvSetsData) {
+            totalSize += csvSetData.connections.size();
+        }
+        List<Connection> merged = new ArrayList<>(totalSize);
+
+        // heap of csvSet indices, ordered by the departure time of their next
+        // connection
+        int[] nextIdx = new int[csvSetsData.size()];
+        PriorityQueue<Integer> heap = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(csvSetsData.get(a).connections.get(nextIdx[a]).getTDep(),
+                    csvSetsData.get(b).connections.get(nextIdx[b]).getTDep());
+            return (cmp != 0) ? cmp : Integer.compare(a, b);
+        });
+        for (int i = 0; i < csvSetsData.size(); i++) {
+            if (!csvSetsData.get(i).connections.isEmpty()) {
+                heap.add(i);
+            }
+        }
+
+        while (!heap.isEmpty()) {
+            int i = heap.poll();
+            List<Connection> connections = csvSetsData.get(i).connections;
+            merged.add(connections.get(nextIdx[i]++));
+            if (nextIdx[i] < connections.size()) {
+                heap.add(i);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Loads the data from the given snapshot file if it was built from the CSV
+     * files of the given csvSets and is newer than all of them. Otherwise, loads
+     * the CSV files and writes a new snapshot so that the next start is fast.
+     */
+    static public Data loadWithSnapshot(Path snapshot, CsvSet... csvSets) throws IOException, CsvValidationException {
+        if (TimetableSnapshot.isUpToDate(snapshot, csvSets)) {
+            try {
+                return TimetableSnapshot.load(snapshot, csvSets);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Invalid snapshot " + snapshot + ", reloading the CSV files: " + e.getMessage());
+            }
+        }
+
+        Data data = loadFromCSVs(csvSets);
+        try {
+            TimetableSnapshot.write(data, snapshot, csvSets);
+        } catch (IOException e) {
+            System.err.println("Could not write the snapshot " + snapshot + ": " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * Returns a view of this data restricted to the given transport operators: their
+     * stops, the connections of their routes and the footpaths between their
+     * stops.
+     */
+    public Data viewOfOperators(String... transportOperators) {
+        Set<String> operators = Set.of(transportOperators);
+        return filteredView(stop -> operators.contains(stop.getTransportOperatorStop()),
+                routeInfo -> operators.contains(routeInfo.getTransportOperator()));
+    }
+
+    /**
+     * Returns a view of this data restricted to the connections of the given
+     * transport types, the stops they pass by and the footpaths between these
+     * stops.
+     */
+    public Data viewOfTransportTypes(TransportType... transportTypes) {
+        Set<TransportType> types = Set.of(transportTypes);
+        return filteredView(stop -> false, routeInfo -> types.contains(routeInfo.getTransportType()));
+    }
+
+    /**
+     * Returns a view keeping the connections whose route satisfies keepRoute, and
+     * the stops satisfying keepStop or passed by one of the kept connections.
+     *
+     * The view shares the Stop and RouteInfo objects and the stop indices of this
+     * data, so both can be used at the same time. Only the selected connections
+     * are copied (still sorted by departure time), and the stops outside of the
+     * view have no footpath.
+     */
+    private Data filteredView(Predicate<Stop> keepStop, Predicate<RouteInfo> keepRoute) {
+        boolean[] keptStops = new boolean[stops.length];
+        for (Stop stop : stopIdToStop.values()) {
+            keptStops[stop.getIndex()] = keepStop.test(stop);
+        }
+
+        // the connections are kept in order, so the selection is already sorted by
+        // departure time
+        int[] selection = new int[connections.size()];
+        int count = 0;
+        for (int i = 0; i < connections.size(); i++) {
+            if (keepRoute.test(connections.getRouteInfo(i))) {
+                selection[count++] = i;
+                keptStops[connections.pDepIdx[i]] = true;
+                keptStops[connections.pArrIdx[i]] = true;
+            }
+        }
+
+        Data view = new Data();
+        view.stops = stops;
+        view.connections = connections.select(Arrays.copyOf(selection, count));
+
+        view.stopIdToStop = new HashMap<>();
+        for (Stop stop : stopIdToStop.values()) {
+            if (keptStops[stop.getIndex()]) {
+                view.stopIdToStop.put(stop.getId(), stop);
+            }
+        }
+        view.stopNames = new StopNameIndex(view.stopIdToStop.values());
+
+        // keep the route of each stop when it is part of the view, otherwise take the
+        // route of one of the kept connections
+        view.stopRouteInfos = new RouteInfo[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            if (keptStops[i] && stopRouteInfos[i] != null && keepRoute.test(stopRouteInfos[i])) {
+                view.stopRouteInfos[i] = stopRouteInfos[i];
+            }
+        }
+        for (int i = 0; i < view.connections.size(); i++) {
+            RouteInfo routeInfo = view.connections.getRouteInfo(i);
+            if (view.stopRouteInfos[view.connections.pDepIdx[i]] == null) {
+                view.stopRouteInfos[view.connections.pDepIdx[i]] = routeInfo;
+            }
+            if (view.stopRouteInfos[view.connections.pArrIdx[i]] == null) {
+                view.stopRouteInfos[view.connections.pArrIdx[i]] = routeInfo;
+            }
+        }
+
+        view.footpaths = footpaths.filter(keptStops);
+
+        return view;
+    }
+
+    /**
+     * Generates the footpaths from every stop to the other stops within maxDistKm.
+     */
+    private void genFootpaths(double maxDistKm) {
+        BallTree ballTree = new BallTree(Arrays.asList(stops));
+        footpaths = ballTree.findAllFootpathsWithinRadius(stops, maxDistKm);
+    }
+
+    /**
+     * Loads a single csvSet. Only touches the returned CsvSetData, so that several
+     * csvSets can be loaded concurrently.
+     */
+    private static CsvSetData loadOneCsvSet(CsvSet csvSet) throws IOException, CsvValidationException {
+        CsvSetData csvSetData = new CsvSetData();
+        final Map<String, Stop> stopIdToStop = csvSetData.stopIdToStop;
+        final List<Connection> connections = csvSetData.connections;
+
         // ------------------- stops.csv -------------------
 
         try (CSVReader reader = new CSVReader(new FileReader(csvSet.stopsCSV))) {
@@ -137,83 +373,97 @@ public class Data {
 
         // ----------------- stop_times.csv -----------------
 
-        try (CSVReader reader = new CSVReader(new FileReader(csvSet.stopTimesCSV))) {
-            String[] headers = reader.readNext(); // Read the header row
-            if (headers == null) {
-                throw new IllegalArgumentException("CSV file is empty or missing headers.");
-            }
-
-            // Map header names to their indices
-            Map<String, Integer> headerMap = new HashMap<>();
-            for (int i = 0; i < headers.length; i++) {
-                headerMap.put(headers[i], i);
-            }
-
-            // Verify that required headers are present
-            String[] requiredHeaders = { "trip_id", "departure_time", "stop_id", "stop_sequence" };
-            for (String header : requiredHeaders) {
-                if (!headerMap.containsKey(header)) {
-                    throw new IllegalArgumentException("Missing required header: " + header);
-                }
-            }
+        StopTimesParser.StopTimes stopTimes = StopTimesParser.parse(csvSet.stopTimesCSV);
 
-            // Step 1: group by trip_id
-            Map<String, List<StopTimeEntry>> tripIdToStopTimes = new HashMap<>();
+        // Step 1: group the rows by trip (tripRows[tripStart[t]..tripStart[t + 1]] are
+        // the rows of the trip with code t, in the order of the file)
+        int nTrips = stopTimes.tripIds.length;
+        int[] tripStart = new int[nTrips + 1];
+        for (int row = 0; row < stopTimes.size(); row++) {
+            tripStart[stopTimes.tripCode[row] + 1]++;
+        }
+        for (int t = 0; t < nTrips; t++) {
+            tripStart[t + 1] += tripStart[t];
+        }
+        int[] tripRows = new int[stopTimes.size()];
+        int[] nextPos = Arrays.copyOf(tripStart, nTrips);
+        for (int row = 0; row < stopTimes.size(); row++) {
+            tripRows[nextPos[stopTimes.tripCode[row]]++] = row;
+        }
 
-            String[] line;
-            while ((line = reader.readNext()) != null) {
-                String tripId = line[headerMap.get("trip_id")];
-                int departureTime = TimeConversion.toSeconds(line[headerMap.get("departure_time")]);
-                String stopId = line[headerMap.get("stop_id")];
-                int stopSequence = Integer.parseInt(line[headerMap.get("stop_sequence")]);
+        // Step 2: resolve each distinct stop id once
+        Stop[] stopCodeToStop = new Stop[stopTimes.stopIds.length];
+        for (int code = 0; code < stopCodeToStop.length; code++) {
+            stopCodeToStop[code] = stopIdToStop.get(stopTimes.stopIds[code]);
+        }
 
-                StopTimeEntry entry = new StopTimeEntry(tripId, departureTime, stopId, stopSequence);
+        Map<String, Integer> tripIdToCode = new HashMap<>();
+        for (int t = 0; t < nTrips; t++) {
+            tripIdToCode.put(stopTimes.tripIds[t], t);
+        }
 
-                tripIdToStopTimes
-                        .computeIfAbsent(tripId, k -> new ArrayList<>())
-                        .add(entry);
-            }
+        for (Map.Entry<String, Integer> trip : tripIdToCode.entrySet()) {
+            String tripId = trip.getKey();
+            int from = tripStart[trip.getValue()];
+            int to = tripStart[trip.getValue() + 1];
 
-            for (List<StopTimeEntry> entries : tripIdToStopTimes.values()) {
-                entries.sort(Comparator.comparingInt(e -> e.stopSequence)); // sort by stop_sequence
+            sortRowsByStopSequence(tripRows, from, to, stopTimes.stopSequence);
 
-                for (int i = 0; i < entries.size() - 1; i++) {
-                    StopTimeEntry from = entries.get(i);
-                    StopTimeEntry to = entries.get(i + 1);
+            for (int i = from; i < to - 1; i++) {
+                int fromRow = tripRows[i];
+                int toRow = tripRows[i + 1];
 
-                    RouteInfo routeInfo = routeIdToRouteInfo.get(tripIdToRouteId.get(from.tripId));
-                    if (routeInfo == null) {
-                        System.err.println("Missing route info for trip_id: " + from.tripId);
-                        continue;
-                    }
+                RouteInfo routeInfo = routeIdToRouteInfo.get(tripIdToRouteId.get(tripId));
+                if (routeInfo == null) {
+                    System.err.println("Missing route info for trip_id: " + tripId);
+                    continue;
+                }
 
-                    Connection connection = new Connection(
-                            from.tripId,
-                            routeInfo,
-                            stopIdToStop.get(from.stopId),
-                            stopIdToStop.get(to.stopId),
-                            from.departureTime,
-                            to.departureTime);
-                    connections.add(connection);
+                Stop pDep = stopCodeToStop[stopTimes.stopCode[fromRow]];
+                Stop pArr = stopCodeToStop[stopTimes.stopCode[toRow]];
+                if (pDep == null || pArr == null) {
+                    System.err.println("Unknown stop_id for trip_id: " + tripId);
+                    continue;
                 }
+
+                Connection connection = new Connection(
+                        tripId,
+                        routeInfo,
+                        pDep,
+                        pArr,
+                        stopTimes.departureTime[fromRow],
+                        stopTimes.departureTime[toRow]);
+                connections.add(connection);
             }
         }
 
         // --------- Add RouteInfo for each stop that have a connection ---------
 
         for (Connection c : connections) {
-            Stop pDep = c.getPDep();
-            Stop pArr = c.getPArr();
-            RouteInfo route = c.getRouteInfo();
+            csvSetData.stopIdToRouteInfo.putIfAbsent(c.getPDep().getId(), c.getRouteInfo());
+            csvSetData.stopIdToRouteInfo.putIfAbsent(c.getPArr().getId(), c.getRouteInfo());
+        }
 
-            if (pDep.getRouteInfo() == null) {
-                pDep.setRouteInfo(route);
-            }
-            if (pArr.getRouteInfo() == null) {
-                pArr.setRouteInfo(route);
+        // sort by increasing departure time
+        connections.sort(Comparator.comparingInt(Connection::getTDep));
+
+        return csvSetData;
+    }
+
+    /**
+     * Stable insertion sort of rows[from..to) by stop_sequence. The rows of a
+     * trip are usually already in order, so this is linear in practice.
+     */
+    private static void sortRowsByStopSequence(int[] rows, int from, int to, int[] stopSequence) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= from && stopSequence[rows[j]] > stopSequence[row]) {
+                rows[j + 1] = rows[j];
+                j--;
             }
+            rows[j + 1] = row;
         }
     }
 
-
 }
@@ -3,12 +3,18 @@ package projetalgo;
 public class Footpath implements Movement {
     private final Stop pDep; // departure point
     private final Stop pArr; // arrival point
+    private final int travelTime; // seconds
 
     public static double WALKING_SPEED = 5; // km/h
 
-    public Footpath(Stop pDep, Stop pArr) {
+    /**
+     * @param travelTime the travel time from pDep to pArr, as computed by
+     *                   computeTravelTime (usually taken from the FootpathGraph)
+     */
+    public Footpath(Stop pDep, Stop pArr, int travelTime) {
         this.pDep = pDep;
         this.pArr = pArr;
+        this.travelTime = travelTime;
     }
 
     /**
@@ -23,7 +29,22 @@ public class Footpath implements Movement {
      * Returns the travel time in seconds assuming constant walking speed.
      */
     public int getTravelTime() {
-        double distanceInKm = getDistance();
+        return travelTime;
+    }
+
+    /**
+     * Returns the travel time in seconds from pDep to pArr assuming constant
+     * walking speed.
+     */
+    public static int computeTravelTime(Stop pDep, Stop pArr) {
+        return travelTimeForDistance(Coord.distance(pDep.getCoord(), pArr.getCoord()));
+    }
+
+    /**
+     * Returns the time in seconds to walk the given distance at constant walking
+     * speed.
+     */
+    public static int travelTimeForDistance(double distanceInKm) {
         double speedInKmPerSecond = WALKING_SPEED / 3600.0; // km/h -> km/s
 
         // Avoid travelTime = 0 second as this can make the algorithm take additional
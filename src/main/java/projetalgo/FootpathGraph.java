@@ -0,0 +1,119 @@
+package projetalgo;
+
+import java.util.Arrays;
+
+/**
+ * All the footpaths of a Data, in compressed sparse row form, indexed by stop
+ * index in both directions.
+ *
+ * The footpaths leaving the stop i are the edges e with outStart[i] <= e <
+ * outStart[i + 1]: they arrive at outStop[e] after outDuration[e] seconds. The
+ * incoming footpaths are stored the same way in inStart/inStop/inDuration
+ * (inStop being the departure stops), the sources of each stop in increasing
+ * index order.
+ *
+ * The durations are computed once when building the graph, so the solvers never
+ * compute distances.
+ */
+public class FootpathGraph {
+    final int[] outStart;
+    final int[] outStop;
+    final int[] outDuration;
+
+    final int[] inStart;
+    final int[] inStop;
+    final int[] inDuration;
+
+    /**
+     * Builds the graph from its outgoing edges, the incoming edges are deduced
+     * from them.
+     */
+    FootpathGraph(int[] outStart, int[] outStop, int[] outDuration) {
+        this.outStart = outStart;
+        this.outStop = outStop;
+        this.outDuration = outDuration;
+
+        int nStops = outStart.length - 1;
+        this.inStart = new int[nStops + 1];
+        this.inStop = new int[outStop.length];
+        this.inDuration = new int[outStop.length];
+
+        for (int e = 0; e < outStop.length; e++) {
+            inStart[outStop[e] + 1]++;
+        }
+        for (int i = 0; i < nStops; i++) {
+            inStart[i + 1] += inStart[i];
+        }
+        int[] nextPos = Arrays.copyOf(inStart, nStops);
+        for (int source = 0; source < nStops; source++) {
+            for (int e = outStart[source]; e < outStart[source + 1]; e++) {
+                int pos = nextPos[outStop[e]]++;
+                inStop[pos] = source;
+                inDuration[pos] = outDuration[e];
+            }
+        }
+    }
+
+    /**
+     * Returns the graph with only the footpaths between two kept stops.
+     */
+    FootpathGraph filter(boolean[] keptStops) {
+        int nStops = outStart.length - 1;
+        int[] filteredStart = new int[nStops + 1];
+        int[] filteredStop = new int[outStop.length];
+        int[] filteredDuration = new int[outStop.length];
+
+        int count = 0;
+        for (int i = 0; i < nStops; i++) {
+            if (keptStops[i]) {
+                for (int e = outStart[i]; e < outStart[i + 1]; e++) {
+                    if (keptStops[outStop[e]]) {
+                        filteredStop[count] = outStop[e];
+                        filteredDuration[count] = outDuration[e];
+                        count++;
+                    }
+                }
+            }
+            filteredStart[i + 1] = count;
+        }
+
+        return new FootpathGraph(filteredStart, Arrays.copyOf(filteredStop, count),
+                Arrays.copyOf(filteredDuration, count));
+    }
+
+    /**
+     * Returns the stop the incoming edge arrives at (the stop i with inStart[i]
+     * <= edge < inStart[i + 1]).
+     */
+    int getInEdgePArr(int edge) {
+        int i = 0;
+        int j = inStart.length - 1;
+        while (i < j) {
+            int mid = (i + j + 1) >>> 1;
+            if (inStart[mid] <= edge) {
+                i = mid;
+            } else {
+                j = mid - 1;
+            }
+        }
+        return i;
+    }
+
+    public int getNumberOfFootpaths() {
+        return outStop.length;
+    }
+
+    /**
+     * Returns the duration of the footpath from pDepIdx to pArrIdx, -1 if there
+     * is none.
+     */
+    public int getDuration(int pDepIdx, int pArrIdx) {
+        for (int e = outStart[pDepIdx]; e < outStart[pDepIdx + 1]; e++) {
+            if (outStop[e] == pArrIdx) {
+                return outDuration[e];
+            }
+        }
+        return -1;
+    }
+
+}
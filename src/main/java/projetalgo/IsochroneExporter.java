@@ -0,0 +1,72 @@
+package projetalgo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the arrival times computed by Solver.solveOneToAll as CSV rows
+ * (stop_id, lat, lon, arrival), to draw isochrone maps.
+ *
+ * The rows are written one by one while iterating on the stop indices, the
+ * arrival times being in seconds since midnight. The unreachable stops are
+ * skipped.
+ */
+public class IsochroneExporter {
+    private static final String HEADER = "stop_id,lat,lon,arrival\n";
+
+    /**
+     * Writes the rows of the reached stops of data to out.
+     *
+     * @param arrivalTimes the arrival times indexed by Stop.getIndex(), as
+     *                     returned by Solver.solveOneToAll
+     * @return the number of rows written
+     */
+    public static int write(Data data, int[] arrivalTimes, Writer out) throws IOException {
+        if (arrivalTimes.length != data.stops.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + data.stops.length + " arrival times, got " + arrivalTimes.length);
+        }
+
+        out.write(HEADER);
+
+        // a single builder and char buffer for all the rows, written without
+        // making a String of each row
+        StringBuilder row = new StringBuilder(64);
+        char[] chars = new char[64];
+        int count = 0;
+        for (int stopIdx = 0; stopIdx < arrivalTimes.length; stopIdx++) {
+            if (arrivalTimes[stopIdx] == Solver.UNREACHABLE) {
+                continue;
+            }
+
+            Stop stop = data.stops[stopIdx];
+            row.setLength(0);
+            row.append(stop.getId()).append(',')
+                    .append(stop.getCoord().lat()).append(',')
+                    .append(stop.getCoord().lon()).append(',')
+                    .append(arrivalTimes[stopIdx]).append('\n');
+            if (row.length() > chars.length) {
+                chars = new char[2 * row.length()];
+            }
+            row.getChars(0, row.length(), chars, 0);
+            out.write(chars, 0, row.length());
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes the rows of the reached stops of data to the given file.
+     */
+    public static int write(Data data, int[] arrivalTimes, Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            return write(data, arrivalTimes, out);
+        }
+    }
+
+}
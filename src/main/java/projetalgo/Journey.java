@@ -0,0 +1,62 @@
+package projetalgo;
+
+import java.util.List;
+
+/**
+ * Journey found by a solver: leaving at tDep and arriving at tArr, with its
+ * legs in order (none if we are already at destination).
+ */
+public class Journey {
+    private final int tDep;
+    private final int tArr;
+    private final List<Leg> legs;
+
+    public Journey(int tDep, int tArr, List<Leg> legs) {
+        this.tDep = tDep;
+        this.tArr = tArr;
+        this.legs = List.copyOf(legs);
+    }
+
+    public int getTDep() {
+        return tDep;
+    }
+
+    public int getTArr() {
+        return tArr;
+    }
+
+    /**
+     * Returns the duration in seconds, including the wait before the first leg.
+     */
+    public int getDuration() {
+        return tArr - tDep;
+    }
+
+    public List<Leg> getLegs() {
+        return legs;
+    }
+
+    /**
+     * Returns the number of trips taken.
+     */
+    public int getTripsCount() {
+        return legs.size() - getFootpathsCount();
+    }
+
+    public int getFootpathsCount() {
+        int footpaths = 0;
+        for (Leg leg : legs) {
+            if (leg.isFootpath()) {
+                footpaths++;
+            }
+        }
+        return footpaths;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> %s (%s)", TimeConversion.fromSeconds(tDep), TimeConversion.fromSeconds(tArr),
+                TimeConversion.formatDuration(tArr - tDep));
+    }
+
+}
@@ -0,0 +1,280 @@
+package projetalgo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Results of the earliest arrival and multicriteria queries, shared by
+ * concurrent queries and bounded in size (the least recently used results
+ * are evicted first). Concurrent identical queries missing the cache are only
+ * solved once, the others waiting for its result.
+ *
+ * The earliest arrival results are keyed by their origins, destinations and
+ * departure time: the footpaths of Solver are not transitive (a stop reached
+ * on foot is not walked from), so leaving later can reach a stop by a
+ * connection rather than on foot and find another journey.
+ *
+ * The multicriteria results are keyed by their origin, destination, criteria
+ * and the bucket of bucketSeconds their departure time falls in. A result
+ * found for a departure at tDep is reused for a later departure t of the same
+ * bucket as long as t is not after the departure of the first leg of any of
+ * its journeys: leaving at t, the same journeys are still available and no
+ * new one is. The result is then given with t as departure time. An
+ * unreachable target stays unreachable for all the later departures of the
+ * bucket. This is exact unless the horizon of the solver depends on the
+ * departure time (earliest arrival plus slack, maximum duration): the reused
+ * result then keeps the horizon of tDep.
+ */
+public class JourneyCache {
+    private final long maxEntries;
+    private final int bucketSeconds;
+
+    // replaced as a whole by invalidateAll, so that a result computed on the old
+    // timetable can only be put in the old cache
+    private volatile Cache<Key, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Key {
+        final Set<String> pDepIds;
+        final Set<String> pArrIds;
+        final CriteriaDescriptor descriptor; // null for the earliest arrival queries
+        final int time; // the departure time for the earliest arrival queries, its bucket otherwise
+
+        Key(List<String> pDepIds, List<String> pArrIds, CriteriaDescriptor descriptor, int time) {
+            this.pDepIds = Set.copyOf(pDepIds);
+            this.pArrIds = Set.copyOf(pArrIds);
+            this.descriptor = descriptor;
+            this.time = time;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && time == key.time && descriptor == key.descriptor
+                    && pDepIds.equals(key.pDepIds) && pArrIds.equals(key.pArrIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pDepIds, pArrIds, System.identityHashCode(descriptor), time);
+        }
+    }
+
+    /**
+     * A result, valid for the departures from tDep to latestDeparture.
+     */
+    private static class Entry {
+        final int tDep;
+        final int latestDeparture;
+        final List<Journey> journeys;
+        final long[] criteria; // of each journey, null for the earliest arrival queries
+
+        Entry(int tDep, int latestDeparture, List<Journey> journeys, long[] criteria) {
+            this.tDep = tDep;
+            this.latestDeparture = latestDeparture;
+            this.journeys = journeys;
+            this.criteria = criteria;
+        }
+
+        boolean isValidAt(int t) {
+            return tDep <= t && t <= latestDeparture;
+        }
+    }
+
+    /**
+     * Hit and miss counts of a cache.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long size;
+
+        private Stats(long hits, long misses, long evictions, long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHitsCount() {
+            return hits;
+        }
+
+        public long getMissesCount() {
+            return misses;
+        }
+
+        /**
+         * Returns the number of results evicted to keep the size bounded.
+         */
+        public long getEvictionsCount() {
+            return evictions;
+        }
+
+        /**
+         * Returns the (approximate) number of results in the cache.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return (requests == 0) ? 0.0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d hits, %d misses (hit rate %.1f %%), %d evictions, %d results",
+                    hits, misses, 100 * getHitRate(), evictions, size);
+        }
+    }
+
+    /**
+     * @param maxEntries    the maximum number of results kept
+     * @param bucketSeconds the length of the departure time buckets
+     */
+    public JourneyCache(long maxEntries, int bucketSeconds) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The size of the cache must not be negative: " + maxEntries);
+        }
+        if (bucketSeconds < 1) {
+            throw new IllegalArgumentException("The buckets must last at least a second: " + bucketSeconds);
+        }
+
+        this.maxEntries = maxEntries;
+        this.bucketSeconds = bucketSeconds;
+        this.entries = newEntries();
+    }
+
+    private Cache<Key, Entry> newEntries() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .<Key, Entry>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the result of the earliest arrival query (see Solver.solve), from
+     * the cache or computed by solve.
+     */
+    public Optional<Journey> getEarliestArrival(List<String> pDepIds, List<String> pArrIds, int tDep,
+            Supplier<Optional<Journey>> solve) {
+        Key key = new Key(pDepIds, pArrIds, null, tDep);
+        Entry entry = get(key, tDep, () -> new Entry(tDep, tDep, solve.get().map(List::of).orElse(List.of()), null));
+        return entry.journeys.isEmpty() ? Optional.empty() : Optional.of(entry.journeys.get(0));
+    }
+
+    /**
+     * Returns the journeys of the multicriteria query (see MultiCritSolver.solve),
+     * from the cache or computed by solve.
+     */
+    public List<MultiCritJourney> getMultiCrit(CriteriaDescriptor descriptor, String pDepId, String pArrId, int tDep,
+            Supplier<List<MultiCritJourney>> solve) {
+        Key key = new Key(List.of(pDepId), List.of(pArrId), descriptor, Math.floorDiv(tDep, bucketSeconds));
+        Entry entry = get(key, tDep, () -> {
+            List<MultiCritJourney> multiCritJourneys = solve.get();
+            List<Journey> journeys = new ArrayList<>(multiCritJourneys.size());
+            long[] criteria = new long[multiCritJourneys.size()];
+            for (int i = 0; i < criteria.length; i++) {
+                journeys.add(multiCritJourneys.get(i).getJourney());
+                criteria[i] = multiCritJourneys.get(i).getCriteria();
+            }
+            return new Entry(tDep, latestDeparture(journeys, tDep), journeys, criteria);
+        });
+
+        List<MultiCritJourney> journeys = new ArrayList<>(entry.journeys.size());
+        for (int i = 0; i < entry.journeys.size(); i++) {
+            journeys.add(new MultiCritJourney(descriptor, entry.criteria[i], withTDep(entry.journeys.get(i), tDep)));
+        }
+        return journeys;
+    }
+
+    /**
+     * Returns the entry of key valid at tDep, computed by solve if there is none.
+     * Only one of the concurrent queries missing the same key runs solve, the
+     * others wait for its entry. An entry of another departure time of the
+     * bucket is replaced.
+     */
+    private Entry get(Key key, int tDep, Supplier<Entry> solve) {
+        Cache<Key, Entry> entries = this.entries;
+        boolean[] solved = { false };
+        Callable<Entry> loader = () -> {
+            solved[0] = true;
+            return solve.get();
+        };
+
+        try {
+            Entry entry = entries.get(key, loader);
+            if (!entry.isValidAt(tDep)) {
+                entries.asMap().remove(key, entry);
+                entry = entries.get(key, loader);
+                if (!entry.isValidAt(tDep)) {
+                    // replaced meanwhile by the entry of yet another departure time
+                    solved[0] = true;
+                    entry = solve.get();
+                }
+            }
+            (solved[0] ? misses : hits).increment();
+            return entry;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            switch (e.getCause()) {
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Returns the latest departure time for which the journeys found for a
+     * departure at tDep are still the result of the query, bounded by the end of
+     * the bucket of tDep.
+     */
+    private int latestDeparture(List<Journey> journeys, int tDep) {
+        int latest = (Math.floorDiv(tDep, bucketSeconds) + 1) * bucketSeconds - 1;
+        for (Journey journey : journeys) {
+            List<Leg> legs = journey.getLegs();
+            latest = Math.min(latest, legs.isEmpty() ? tDep : legs.get(0).getTDep());
+        }
+        return latest;
+    }
+
+    private static Journey withTDep(Journey journey, int tDep) {
+        return (journey.getTDep() == tDep) ? journey : new Journey(tDep, journey.getTArr(), journey.getLegs());
+    }
+
+    /**
+     * Drops all the results at once, to be called when the timetable changes:
+     * the queries running on the old timetable cannot put their result in the
+     * new cache.
+     */
+    public void invalidateAll() {
+        entries = newEntries();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+}
@@ -0,0 +1,327 @@
+package projetalgo;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import com.opencsv.CSVWriter;
+
+/**
+ * Writes the results of queries to a stream, as CSV or JSON lines (one object
+ * per query). Each result is written as soon as it is given, so that a caller
+ * producing many of them never holds them all in memory.
+ *
+ * A result is written with the id of its query, its solver, its status and
+ * its latency, and its journeys either summarized (arrival, duration, number
+ * of trips and footpaths, one CSV row per journey) or with all their legs (one
+ * CSV row per leg), with their criteria for the multicriteria journeys. A
+ * query without journey gives a single CSV row.
+ */
+public class JourneyWriter implements Closeable, Flushable {
+    public enum Format {
+        CSV,
+        JSONL
+    }
+
+    public enum Detail {
+        SUMMARY,
+        LEGS
+    }
+
+    public enum Status {
+        OK,
+        UNREACHABLE,
+        ERROR
+    }
+
+    /**
+     * The result of a query: its journeys, or why there are none.
+     */
+    public static class Result {
+        final String id;
+        final String solver; // as written in the query
+        final Status status;
+        final int tDep; // -1 if the query is invalid
+        final List<Journey> journeys;
+        final List<String> criteria; // of each journey (null for the earliest arrival journeys)
+        final long latencyNanos;
+        final String message; // null unless status is ERROR
+
+        public Result(String id, String solver, Status status, int tDep, List<Journey> journeys,
+                List<String> criteria, long latencyNanos, String message) {
+            this.id = id;
+            this.solver = solver;
+            this.status = status;
+            this.tDep = tDep;
+            this.journeys = journeys;
+            this.criteria = criteria;
+            this.latencyNanos = latencyNanos;
+            this.message = message;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private static final String[] SUMMARY_CSV_HEADER = { "id", "solver", "status", "journey", "departure", "arrival",
+            "duration", "legs", "footpaths", "criteria", "latency_ms", "message" };
+    private static final String[] LEGS_CSV_HEADER = { "id", "solver", "status", "journey", "criteria", "leg", "mode",
+            "route", "trip", "from", "from_name", "departure", "to", "to_name", "arrival", "latency_ms", "message" };
+
+    private final Writer out;
+    private final Format format;
+    private final Detail detail;
+    private final CSVWriter csvWriter; // null for JSON lines
+
+    /**
+     * Writes the CSV header right away.
+     */
+    public JourneyWriter(Writer out, Format format, Detail detail) {
+        this.out = out;
+        this.format = format;
+        this.detail = detail;
+        if (format == Format.CSV) {
+            this.csvWriter = new CSVWriter(out);
+            csvWriter.writeNext((detail == Detail.SUMMARY) ? SUMMARY_CSV_HEADER : LEGS_CSV_HEADER, false);
+        } else {
+            this.csvWriter = null;
+        }
+    }
+
+    /**
+     * Returns the format matching the extension of the given output file: JSON
+     * lines for ".jsonl" and ".json", CSV otherwise.
+     */
+    public static Format formatOf(Path output) {
+        String name = output.getFileName().toString();
+        return (name.endsWith(".jsonl") || name.endsWith(".json")) ? Format.JSONL : Format.CSV;
+    }
+
+    public void write(Result result) throws IOException {
+        if (format == Format.JSONL) {
+            out.write(toJsonLine(result));
+        } else if (detail == Detail.SUMMARY) {
+            writeSummaryCsv(result);
+        } else {
+            writeLegsCsv(result);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (csvWriter != null) {
+            csvWriter.flush();
+            if (csvWriter.checkError()) {
+                throw new IOException("Could not write the journeys", csvWriter.getException());
+            }
+        } else {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String formatLatency(long nanos) {
+        // the default locale may use a decimal comma, which would break both formats
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String criteria(Result result, int i) {
+        String criteria = (result.criteria == null) ? null : result.criteria.get(i);
+        return (criteria == null) ? "" : criteria;
+    }
+
+    /**
+     * Writes one row per journey of the result, or a single row without journey
+     * if there is none.
+     */
+    private void writeSummaryCsv(Result result) {
+        String status = result.status.name().toLowerCase();
+        String departure = (result.tDep == -1) ? "" : TimeConversion.fromSeconds(result.tDep);
+        String latency = formatLatency(result.latencyNanos);
+        String message = (result.message == null) ? "" : result.message;
+
+        if (result.journeys.isEmpty()) {
+            csvWriter.writeNext(new String[] { result.id, result.solver, status, "", departure, "", "", "", "", "",
+                    latency, message }, false);
+            return;
+        }
+
+        for (int i = 0; i < result.journeys.size(); i++) {
+            Journey journey = result.journeys.get(i);
+            csvWriter.writeNext(new String[] { result.id, result.solver, status, Integer.toString(i), departure,
+                    TimeConversion.fromSeconds(journey.getTArr()), Integer.toString(journey.getTArr() - result.tDep),
+                    Integer.toString(journey.getTripsCount()), Integer.toString(journey.getFootpathsCount()),
+                    criteria(result, i), latency, message }, false);
+        }
+    }
+
+    /**
+     * Writes one row per leg of the journeys of the result, or a single row
+     * without leg for a journey without leg or if there is no journey.
+     */
+    private void writeLegsCsv(Result result) {
+        String status = result.status.name().toLowerCase();
+        String latency = formatLatency(result.latencyNanos);
+        String message = (result.message == null) ? "" : result.message;
+
+        if (result.journeys.isEmpty()) {
+            csvWriter.writeNext(new String[] { result.id, result.solver, status, "", "", "", "", "", "", "", "", "",
+                    "", "", "", latency, message }, false);
+            return;
+        }
+
+        for (int i = 0; i < result.journeys.size(); i++) {
+            Journey journey = result.journeys.get(i);
+            List<Leg> legs = journey.getLegs();
+            if (legs.isEmpty()) {
+                csvWriter.writeNext(new String[] { result.id, result.solver, status, Integer.toString(i),
+                        criteria(result, i), "", "", "", "", "", "", TimeConversion.fromSeconds(journey.getTDep()),
+                        "", "", TimeConversion.fromSeconds(journey.getTArr()), latency, message }, false);
+            }
+            for (int k = 0; k < legs.size(); k++) {
+                Leg leg = legs.get(k);
+                TripLeg tripLeg = (leg.getMovement() instanceof TripLeg t) ? t : null;
+                csvWriter.writeNext(new String[] { result.id, result.solver, status, Integer.toString(i),
+                        criteria(result, i), Integer.toString(k), mode(leg),
+                        (tripLeg == null) ? "" : tripLeg.getRouteInfo().getRouteName(),
+                        (tripLeg == null) ? "" : tripLeg.getTripId(), leg.getPDep().getId(),
+                        leg.getPDep().getName(), TimeConversion.fromSeconds(leg.getTDep()), leg.getPArr().getId(),
+                        leg.getPArr().getName(), TimeConversion.fromSeconds(leg.getTArr()), latency, message },
+                        false);
+            }
+        }
+    }
+
+    /**
+     * Returns the result as a single JSON object followed by a new line.
+     */
+    private String toJsonLine(Result result) {
+        StringBuilder json = new StringBuilder((detail == Detail.SUMMARY) ? 256 : 1024);
+        json.append("{\"id\":");
+        appendJsonString(json, result.id);
+        json.append(",\"solver\":");
+        appendJsonString(json, result.solver);
+        json.append(",\"status\":\"").append(result.status.name().toLowerCase()).append('"');
+        if (result.tDep != -1) {
+            json.append(",\"departure\":\"").append(TimeConversion.fromSeconds(result.tDep)).append('"');
+        }
+        json.append(",\"journeys\":[");
+        for (int i = 0; i < result.journeys.size(); i++) {
+            Journey journey = result.journeys.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            if (detail == Detail.SUMMARY) {
+                json.append("{\"arrival\":\"").append(TimeConversion.fromSeconds(journey.getTArr())).append('"');
+                json.append(",\"duration\":").append(journey.getTArr() - result.tDep);
+                json.append(",\"legs\":").append(journey.getTripsCount());
+                json.append(",\"footpaths\":").append(journey.getFootpathsCount());
+            } else {
+                json.append('{');
+                appendJourneyFields(json, journey);
+            }
+            if (result.criteria != null && result.criteria.get(i) != null) {
+                json.append(",\"criteria\":");
+                appendJsonString(json, result.criteria.get(i));
+            }
+            json.append('}');
+        }
+        json.append("],\"latency_ms\":").append(formatLatency(result.latencyNanos));
+        if (result.message != null) {
+            json.append(",\"message\":");
+            appendJsonString(json, result.message);
+        }
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * Returns "walk" for a footpath, the transport type of the trip otherwise.
+     */
+    private static String mode(Leg leg) {
+        return switch (leg.getMovement()) {
+            case TripLeg tripLeg -> tripLeg.getRouteInfo().getTransportType().name().toLowerCase();
+            default -> "walk";
+        };
+    }
+
+    private static void appendJsonStop(StringBuilder json, Stop stop) {
+        json.append("{\"id\":");
+        appendJsonString(json, stop.getId());
+        json.append(",\"name\":");
+        appendJsonString(json, stop.getName());
+        json.append('}');
+    }
+
+    /**
+     * Appends the fields of the journey (times and legs) to a JSON object being
+     * written.
+     */
+    static void appendJourneyFields(StringBuilder json, Journey journey) {
+        json.append("\"departure\":\"").append(TimeConversion.fromSeconds(journey.getTDep())).append('"');
+        json.append(",\"arrival\":\"").append(TimeConversion.fromSeconds(journey.getTArr())).append('"');
+        json.append(",\"duration\":").append(journey.getDuration());
+        json.append(",\"legs\":[");
+        List<Leg> legs = journey.getLegs();
+        for (int k = 0; k < legs.size(); k++) {
+            Leg leg = legs.get(k);
+            if (k > 0) {
+                json.append(',');
+            }
+            json.append("{\"mode\":\"").append(mode(leg)).append('"');
+            if (leg.getMovement() instanceof TripLeg tripLeg) {
+                json.append(",\"route\":");
+                appendJsonString(json, tripLeg.getRouteInfo().getRouteName());
+                json.append(",\"trip\":");
+                appendJsonString(json, tripLeg.getTripId());
+            }
+            json.append(",\"from\":");
+            appendJsonStop(json, leg.getPDep());
+            json.append(",\"departure\":\"").append(TimeConversion.fromSeconds(leg.getTDep())).append('"');
+            json.append(",\"to\":");
+            appendJsonStop(json, leg.getPArr());
+            json.append(",\"arrival\":\"").append(TimeConversion.fromSeconds(leg.getTArr())).append("\"}");
+        }
+        json.append(']');
+    }
+
+    static void appendJsonString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+}
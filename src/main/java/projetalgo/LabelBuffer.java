@@ -0,0 +1,121 @@
+package projetalgo;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of (criteria, arrival time, movement) labels, used by
+ * MultiCritSolver and ProfileFunction as a scratch buffer: it is cleared and
+ * refilled for every connection scanned, so that the scan does not allocate.
+ *
+ * A label can be read as: "there exists a partial journey with these (packed)
+ * criteria arriving at the destination at tArr, and to continue it from here,
+ * you must take the movement". The movement is an int code (see
+ * MultiCritSolver), only resolved to a Connection or a Footpath when a journey
+ * is extracted.
+ */
+class LabelBuffer {
+    private long[] criteria = new long[8];
+    private int[] arrivals = new int[8];
+    private int[] movements = new int[8];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long getCriteria(int k) {
+        return criteria[k];
+    }
+
+    int getArrival(int k) {
+        return arrivals[k];
+    }
+
+    int getMovement(int k) {
+        return movements[k];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends the label.
+     */
+    void add(long crit, int tArr, int movement) {
+        if (size == criteria.length) {
+            int capacity = criteria.length * 2;
+            criteria = Arrays.copyOf(criteria, capacity);
+            arrivals = Arrays.copyOf(arrivals, capacity);
+            movements = Arrays.copyOf(movements, capacity);
+        }
+        criteria[size] = crit;
+        arrivals[size] = tArr;
+        movements[size] = movement;
+        size++;
+    }
+
+    /**
+     * Returns the index of the label with the given criteria, -1 if there is none.
+     */
+    int indexOf(long crit) {
+        for (int k = 0; k < size; k++) {
+            if (criteria[k] == crit) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the label, unless there is already a label with the same criteria: in
+     * that case, only the one with the best arrival time is kept (the old one if
+     * they arrive at the same time).
+     */
+    void improve(long crit, int tArr, int movement) {
+        int k = indexOf(crit);
+        if (k == -1) {
+            add(crit, tArr, movement);
+        } else if (tArr < arrivals[k]) {
+            arrivals[k] = tArr;
+            movements[k] = movement;
+        }
+    }
+
+    /**
+     * Removes the k-th label, keeping the order of the others.
+     */
+    void remove(int k) {
+        int moved = size - k - 1;
+        System.arraycopy(criteria, k + 1, criteria, k, moved);
+        System.arraycopy(arrivals, k + 1, arrivals, k, moved);
+        System.arraycopy(movements, k + 1, movements, k, moved);
+        size--;
+    }
+
+    /**
+     * Sorts the labels by increasing (packed) criteria.
+     */
+    void sortByCriteria() {
+        for (int i = 1; i < size; i++) {
+            long crit = criteria[i];
+            int tArr = arrivals[i];
+            int movement = movements[i];
+            int j = i - 1;
+            while (j >= 0 && Long.compareUnsigned(criteria[j], crit) > 0) {
+                criteria[j + 1] = criteria[j];
+                arrivals[j + 1] = arrivals[j];
+                movements[j + 1] = movements[j];
+                j--;
+            }
+            criteria[j + 1] = crit;
+            arrivals[j + 1] = tArr;
+            movements[j + 1] = movement;
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package projetalgo;
+
+/**
+ * Step of a Journey: a trip taken between two stops (a TripLeg) or a walk
+ * between two stops (a Footpath), leaving at tDep and arriving at tArr.
+ */
+public class Leg {
+    private final Movement movement; // TripLeg or Footpath
+    private final int tDep;
+    private final int tArr;
+
+    public Leg(Movement movement, int tDep, int tArr) {
+        this.movement = movement;
+        this.tDep = tDep;
+        this.tArr = tArr;
+    }
+
+    public Movement getMovement() {
+        return movement;
+    }
+
+    public Stop getPDep() {
+        return movement.getPDep();
+    }
+
+    public Stop getPArr() {
+        return movement.getPArr();
+    }
+
+    public int getTDep() {
+        return tDep;
+    }
+
+    public int getTArr() {
+        return tArr;
+    }
+
+    public boolean isFootpath() {
+        return movement instanceof Footpath;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> %s: %s", TimeConversion.fromSeconds(tDep), TimeConversion.fromSeconds(tArr),
+                movement);
+    }
+
+}
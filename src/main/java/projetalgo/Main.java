@@ -1,6 +1,8 @@
 package projetalgo;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -17,27 +19,33 @@ import com.opencsv.exceptions.CsvValidationException;
 
 
 public class Main {
+    // the multicriteria journeys arriving more than an hour after the earliest
+    // arrival are not searched
+    private static final SearchHorizon MULTI_CRIT_HORIZON = SearchHorizon.earliestArrivalPlus(60 * 60);
+
     private enum SolverType {
         MULTI_CRIT,
-        EARLIEST_ARRIVAL
+        EARLIEST_ARRIVAL,
+        DEPARTURE_LIST
     }
 
     /**
      * @brief Get the stops with the same name but not duplicate. (duplicate means that the stop is in the same route but in different direction)
+     * @param solver the solver object giving the route of each stop
      * @param stopResult the list of stops to check
      * @return List of stops with the same name but not duplicate
      */
-    private static List<Stop> getSameStopsNameNoDuplicate(List<Stop> stopResult) {
+    private static List<Stop> getSameStopsNameNoDuplicate(AbstractSolver solver, List<Stop> stopResult) {
         List<Stop> stopExistResult = new ArrayList<>();
         for (Stop stop : stopResult) {
-            RouteInfo routeInfo = stop.getRouteInfo();
+            RouteInfo routeInfo = solver.getRouteInfo(stop);
             if (routeInfo != null && stopExistResult.isEmpty()) {
                 stopExistResult.add(stop);
                 continue;
             }
             List<Stop> savedStops = new ArrayList<>();
             for (Stop stop1 : stopExistResult) {
-                if (!stop1.getRouteInfo().equals(routeInfo)) {
+                if (!solver.getRouteInfo(stop1).equals(routeInfo)) {
                     savedStops.add(stop1);
                 }
             }
@@ -70,7 +78,7 @@ public class Main {
                 }
 
                 List<Stop> stopResult = solver.stopsWithName(input, Optional.empty());
-                List<Stop> differentStopsSameNameResult = getSameStopsNameNoDuplicate(stopResult);
+                List<Stop> differentStopsSameNameResult = getSameStopsNameNoDuplicate(solver, stopResult);
                 
                 if (differentStopsSameNameResult.size() == 1) {
                     return differentStopsSameNameResult.stream()
@@ -99,7 +107,7 @@ public class Main {
                         }
 
                         List<Stop> stopResultWithRouteName = solver.stopsWithName(input, Optional.of(routeName));
-                        List<Stop> differentStopsSameNameWithRouteNameResult = getSameStopsNameNoDuplicate(stopResultWithRouteName);
+                        List<Stop> differentStopsSameNameWithRouteNameResult = getSameStopsNameNoDuplicate(solver, stopResultWithRouteName);
 
                         if (differentStopsSameNameWithRouteNameResult.size() == 1) {
                             return differentStopsSameNameWithRouteNameResult.stream()
@@ -116,7 +124,14 @@ public class Main {
                     }
                 }
     
-                instruction = "The '" + input + "' stop was not found in the data. " + textToShow;
+                List<String> closestNames = solver.getStopNames().closestNames(input, 3);
+                instruction = "The '" + input + "' stop was not found in the data. ";
+                if (!closestNames.isEmpty()) {
+                    instruction += "Did you mean " + closestNames.stream()
+                            .map(name -> "'" + name + "'")
+                            .collect(Collectors.joining(" or ")) + "? ";
+                }
+                instruction += textToShow;
             }
         } catch (UserInterruptException e) {
             System.out.println("\nProgram interrupted by user.");
@@ -161,12 +176,131 @@ public class Main {
         return -1;
     } 
 
-    public static void main(String[] args) {
+    /**
+     * @brief Get the choice of the user among n numbered options.
+     * @param textToShow the text to show to the user when asking for input
+     * @param n the number of options
+     * @return the number chosen by the user, between 0 and n - 1
+     */
+    private static int getChoiceInput(final String textToShow, final int n) {
+        String instruction = textToShow;
         try {
-            Terminal terminal = TerminalBuilder.builder().dumb(true).build();
-            LineReader reader = LineReaderBuilder.builder().terminal(terminal).build();
-            InteractiveConsole.init(reader);
+            while (true) {
+                String input = InteractiveConsole.ask(instruction).strip();
+
+                if (input.equalsIgnoreCase("q") || input.equalsIgnoreCase("quit")) {
+                    System.out.println("Exiting the program ...");
+                    System.exit(0);
+                }
 
+                try {
+                    int choice = Integer.parseInt(input);
+                    if (choice >= 0 && choice < n) {
+                        return choice;
+                    }
+                } catch (NumberFormatException e) {
+                    // asked again below
+                }
+                instruction = "Invalid input, expected a number between 0 and " + (n - 1) + "\n" + textToShow;
+            }
+        } catch (UserInterruptException e) {
+            System.out.println("\nProgram interrupted by user.");
+            System.exit(0);
+        }
+        return -1;
+    }
+
+    /**
+     * @brief Run the queries of a file without any interaction (see BatchRunner).
+     * @param args the command line arguments: --batch QUERIES OUTPUT [--workers N] [--format csv|jsonl] [--legs]
+     * @param data the data of the earliest arrival queries
+     * @param multiCritData the data of the multicriteria queries
+     */
+    private static void runBatch(String[] args, Data data, Data multiCritData) throws IOException, CsvValidationException {
+        String usage = "Usage: --batch QUERIES OUTPUT [--workers N] [--format csv|jsonl] [--legs]";
+        if (args.length < 3) {
+            System.err.println(usage);
+            return;
+        }
+
+        Path queries = Path.of(args[1]);
+        Path output = Path.of(args[2]);
+        int nWorkers = Runtime.getRuntime().availableProcessors();
+        JourneyWriter.Format format = JourneyWriter.formatOf(output);
+        JourneyWriter.Detail detail = JourneyWriter.Detail.SUMMARY;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--workers") && i + 1 < args.length) {
+                try {
+                    nWorkers = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    nWorkers = 0;
+                }
+                if (nWorkers < 1) {
+                    System.err.println("The number of workers must be a positive integer");
+                    return;
+                }
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                switch (args[++i].toLowerCase()) {
+                    case "csv" -> format = JourneyWriter.Format.CSV;
+                    case "jsonl" -> format = JourneyWriter.Format.JSONL;
+                    default -> {
+                        System.err.println(usage);
+                        return;
+                    }
+                }
+            } else if (args[i].equals("--legs")) {
+                detail = JourneyWriter.Detail.LEGS;
+            } else {
+                System.err.println(usage);
+                return;
+            }
+        }
+
+        System.out.println("Running the queries of " + queries + " on " + nWorkers + " workers ...");
+        BatchRunner.Stats stats = new BatchRunner(data, multiCritData, nWorkers, format, detail, MULTI_CRIT_HORIZON)
+                .run(queries, output);
+        System.out.println(stats);
+        System.out.println("Results written to " + output);
+    }
+
+    /**
+     * @brief Answer the queries over HTTP until the program is stopped (see RoutingServer).
+     * @param args the command line arguments: --serve [PORT]
+     * @param data the data of the earliest arrival queries
+     * @param multiCritData the data of the multicriteria queries
+     */
+    private static void runServer(String[] args, Data data, Data multiCritData) {
+        int port = 8080;
+        if (args.length > 2) {
+            System.err.println("Usage: --serve [PORT]");
+            return;
+        }
+        if (args.length == 2) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 65535) {
+                System.err.println("The port must be an integer between 0 and 65535");
+                return;
+            }
+        }
+
+        RoutingServer server;
+        try {
+            server = new RoutingServer(data, multiCritData, MULTI_CRIT_HORIZON, new InetSocketAddress(port));
+        } catch (IOException e) {
+            System.err.println("Could not listen on port " + port + ": " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/ (press Ctrl+C to stop)");
+    }
+
+    public static void main(String[] args) {
+        try {
             // -------------- Load the GTFS data --------------
 
             System.out.println("Loading the data of the GTFS files. Please wait ...");
@@ -186,23 +320,46 @@ public class Main {
                     "./GTFS/TEC/stops.csv", "./GTFS/TEC/trips.csv");
 
 
-            Data AllData = Data.loadFromCSVs(sncbSet, stibSet, delijnSet, tecSet);
-            Data sncbData = Data.loadFromCSVs(sncbSet);
-            
-            Solver solver = new Solver(AllData);
-            MultiCritSolver multiCritSolver = new MultiCritSolver(sncbData);
+            // the snapshot is (re)generated from the CSV files when it is missing, older
+            // than the CSV files or built from other CSV files
+            Data AllData = Data.loadWithSnapshot(Path.of("./GTFS/all.snapshot"), sncbSet, stibSet, delijnSet, tecSet);
+            Data sncbData = AllData.viewOfOperators(sncbSet.transportOperator);
 
             long endTime = System.nanoTime();
             double durationInSeconds = (endTime - startTime) /  1_000_000_000.0;
 
             System.out.printf("Data loaded successfully in %.2f seconds!\n", durationInSeconds);
 
+            // the batch and server modes run without a console
+            if (args.length > 0 && args[0].equals("--batch")) {
+                runBatch(args, AllData, sncbData);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--serve")) {
+                runServer(args, AllData, sncbData);
+                return;
+            }
+
+            Solver solver = new Solver(AllData);
+            MultiCritSolver multiCritSolver = new MultiCritSolver(sncbData);
+            multiCritSolver.setHorizon(MULTI_CRIT_HORIZON);
+            ConsoleRenderer renderer = new ConsoleRenderer(System.out);
+
+            // the stop names are completed with tab
+            Terminal terminal = TerminalBuilder.builder().dumb(true).build();
+            LineReader reader = LineReaderBuilder.builder().terminal(terminal)
+                    .parser(StopNameCompleter.parser())
+                    .completer(new StopNameCompleter(solver.getStopNames()))
+                    .option(LineReader.Option.CASE_INSENSITIVE, true)
+                    .build();
+            InteractiveConsole.init(reader);
+
             System.out.println("\nYou can press 'q' or enter 'quit' at any time to stop the program.");
             System.out.println("For the Departure Time, use 24-hour time format, e.g., 08:00:30 or 17:30:45");
 
             // -------------- While the user won't quit --------------
 
-            String instruction = "\nPlease choose whether you want optimize a second criterion before entering your journey (enter '0' for earliest arrival or '1' for multicriteria): ";
+            String instruction = "\nPlease choose whether you want optimize a second criterion before entering your journey (enter '0' for earliest arrival, '1' for multicriteria or '2' for the list of departures over a time window): ";
             while (true) {
                 String solverTypeStr = InteractiveConsole.ask(instruction).stripTrailing();
                 if (solverTypeStr.equalsIgnoreCase("q") || solverTypeStr.equalsIgnoreCase("quit")) {
@@ -220,8 +377,12 @@ public class Main {
                         solverType = SolverType.MULTI_CRIT;
                         break;
                     }
+                    case "2" -> {
+                        solverType = SolverType.DEPARTURE_LIST;
+                        break;
+                    }
                     default -> {
-                        instruction = "Invalid input. Please enter '0' or '1': ";
+                        instruction = "Invalid input. Please enter '0', '1' or '2': ";
                         continue;
                     }
                 }
@@ -250,7 +411,62 @@ public class Main {
 
                         // -------------- Solve the shortest path --------------
 
-                        solver.solve(pDepIds, pArrIds, tDep);
+                        renderer.printEarliestArrival(solver.solve(pDepIds, pArrIds, tDep));
+                        running = false;
+                    }
+                }
+
+                else if (solverType == SolverType.DEPARTURE_LIST) {
+                    while (running) {
+                        System.out.println(AinsiCode.BOLD + "\n=== Create a New Trip ===" + AinsiCode.RESET);
+
+                        List<String> pDepIds = getStopInput(solver, "Enter the departure stop: ", true);
+                        if (pDepIds == null || pDepIds.size() != 1) {
+                            System.out.println("Invalid stop. Please try again.");
+                            continue;
+                        }
+                        List<String> pArrIds = getStopInput(solver, "Enter the arrival stop: ", true);
+                        if (pArrIds == null || pArrIds.size() != 1) {
+                            System.out.println("Invalid stop. Please try again.");
+                            continue;
+                        }
+                        int tStart = getTimeInput("Enter the earliest departure time: ");
+                        if (tStart == -1) {
+                            System.out.println("Invalid time format. Please try again.");
+                            continue;
+                        }
+                        int tEnd = getTimeInput("Enter the latest departure time: ");
+                        if (tEnd == -1 || tEnd < tStart) {
+                            System.out.println("The latest departure time must be after the earliest one. Please try again.");
+                            continue;
+                        }
+
+                        // -------------- Solve the departure list --------------
+
+                        if (pDepIds.get(0).equals(pArrIds.get(0))) {
+                            System.out.println("You are already at your destination");
+                            running = false;
+                            continue;
+                        }
+
+                        List<Journey> journeys = solver.solveProfile(pDepIds.get(0), pArrIds.get(0), tStart, tEnd);
+                        int walkingDuration = solver.getWalkingDuration(pDepIds.get(0), pArrIds.get(0));
+                        if (walkingDuration != -1) {
+                            System.out.println("You can also walk there in " + TimeConversion.formatDuration(walkingDuration) + ".");
+                        }
+                        if (journeys.isEmpty()) {
+                            System.out.println("No departure found in this time window.");
+                            running = false;
+                            continue;
+                        }
+
+                        System.out.println(AinsiCode.BOLD + "\nDepartures:" + AinsiCode.RESET);
+                        for (int i = 0; i < journeys.size(); i++) {
+                            System.out.println("[" + i + "] " + journeys.get(i));
+                        }
+                        int choice = getChoiceInput("Enter the number of the departure to show: ", journeys.size());
+                        renderer.printJourney(journeys.get(choice));
+
                         running = false;
                     }
                 }
@@ -277,8 +493,18 @@ public class Main {
 
                         // -------------- Solve the shortest path --------------
 
+                        if (pDepIds.get(0).equals(pArrIds.get(0))) {
+                            System.out.println("You are already at your destination");
+                            running = false;
+                            continue;
+                        }
+
                         System.out.println("Searching ...");
-                        multiCritSolver.solve(FootpathsCountCriteriaTracker::new, pDepIds.get(0), pArrIds.get(0), tDep);
+                        List<MultiCritJourney> journeys = multiCritSolver.solve(CriteriaDescriptor.footpathsCount(),
+                                pDepIds.get(0), pArrIds.get(0), tDep);
+                        renderer.promptJourney(journeys).ifPresentOrElse(
+                                journey -> renderer.printJourney(journey.getJourney()),
+                                () -> System.out.println("no journey found"));
 
                         running = false;
                     }
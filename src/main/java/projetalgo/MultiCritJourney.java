@@ -0,0 +1,39 @@
+package projetalgo;
+
+/**
+ * One of the Pareto optimal journeys found by MultiCritSolver: its criteria and
+ * the journey itself.
+ */
+public class MultiCritJourney {
+    private final CriteriaDescriptor descriptor;
+    private final long criteria; // packed by descriptor
+    private final Journey journey;
+
+    public MultiCritJourney(CriteriaDescriptor descriptor, long criteria, Journey journey) {
+        this.descriptor = descriptor;
+        this.criteria = criteria;
+        this.journey = journey;
+    }
+
+    public CriteriaDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    public long getCriteria() {
+        return criteria;
+    }
+
+    public int getTArr() {
+        return journey.getTArr();
+    }
+
+    public Journey getJourney() {
+        return journey;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("arrives at %s, %s", TimeConversion.fromSeconds(getTArr()), descriptor.format(criteria));
+    }
+
+}
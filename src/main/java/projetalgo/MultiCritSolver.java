@@ -1,21 +1,31 @@
 package projetalgo;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
-
-import javafx.util.Pair;
 
 public class MultiCritSolver extends AbstractSolver {
-    private final HashMap<String, List<Footpath>> stopIdToIncomingFootpaths;
+    private final FootpathGraph footpaths;
+    private volatile SearchHorizon horizon = SearchHorizon.none();
+    // runs the earliest arrival scans of the horizon, in the workspace of the query
+    private final Solver earliestArrivalSolver;
+
+    // Mutable state of the queries (label buffers, profile functions), borrowed
+    // for each of them (the solver can answer concurrent queries).
+    private final QueryWorkspace.Pool workspaces;
     // not necessary since we don't use tau2
     // private final List<String> tripIds;
 
-    private static final List<Footpath> EMPTY_FOOTPATH_LIST = List.of();
+    // Movement codes stored in the labels of the profiles: the index of the
+    // connection to take (>= 0), or a footpath encoded from its incoming edge in
+    // the FootpathGraph (never ProfileFunction.NO_MOVEMENT).
+    private static int footpathMovement(int inEdge) {
+        return -2 - inEdge;
+    }
+
+    private static int footpathInEdge(int movement) {
+        return -2 - movement;
+    }
 
     public MultiCritSolver(Data data) {
         super(data);
@@ -23,152 +33,166 @@ public class MultiCritSolver extends AbstractSolver {
         // not necessary since we don't use tau2
         // this.tripIds = new ArrayList<>();
 
-        double maxFootpathDistKm = 0.5;
-        this.stopIdToIncomingFootpaths = new HashMap<>();
-        this.genFootpaths(maxFootpathDistKm);
+        this.footpaths = data.footpaths;
+        this.earliestArrivalSolver = new Solver(data);
+        this.workspaces = new QueryWorkspace.Pool(data);
+    }
+
+    /**
+     * Sets the horizon of the next queries (none by default): the journeys
+     * arriving after it are not searched.
+     */
+    public void setHorizon(SearchHorizon horizon) {
+        this.horizon = horizon;
+    }
+
+    public SearchHorizon getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Returns the latest arrival time to search for the given query, according
+     * to the horizon.
+     */
+    private int getTArrMax(QueryWorkspace ws, String pDepId, String pArrId, int tDep) {
+        SearchHorizon horizon = this.horizon;
+        int tArrEarliest = Solver.UNREACHABLE;
+        if (horizon.needsEarliestArrival()) {
+            tArrEarliest = earliestArrivalSolver.earliestArrivalTime(ws,
+                    new int[] { stopIdToStop.get(pDepId).getIndex() },
+                    new int[] { stopIdToStop.get(pArrId).getIndex() }, tDep);
+        }
+        return horizon.getTArrMax(tDep, tArrEarliest);
+    }
+
+    /**
+     * Returns the Connection or the Footpath of a movement code.
+     */
+    private Movement toMovement(int movement) {
+        if (movement >= 0) {
+            return connections.get(movement);
+        }
+        int edge = footpathInEdge(movement);
+        return new Footpath(stops[footpaths.inStop[edge]], stops[footpaths.getInEdgePArr(edge)],
+                footpaths.inDuration[edge]);
     }
 
     /**
-     * Displays instructions for completing the journey.
+     * Returns the journey leaving pDepId at tDep whose criteria are the given
+     * ones.
      */
-    private void displayJourney(Map<String, ProfileFunction> S, String pDepId,
+    private Journey extractJourney(ProfileFunctionPool S, String pDepId,
             String pArrId, int tDep,
-            CriteriaTracker criteriaTracker) {
+            CriteriaDescriptor descriptor, long criteria) {
 
-        String stopId = pDepId;
-        String tripId = null;
+        // the criteria are decremented along the journey
+        List<Movement> movements = new ArrayList<>();
+        int tStart = tDep;
 
-        while (!stopId.equals(pArrId)) {
-            Movement movement = S.get(stopId).getFirstMatch(tDep, criteriaTracker);
+        int stopIdx = stopIdToStop.get(pDepId).getIndex();
+        int pArrIdx = stopIdToStop.get(pArrId).getIndex();
 
-            System.out.printf("taking %s\n", movement);
+        while (stopIdx != pArrIdx) {
+            ProfileFunction profile = S.get(stopIdx);
+            int code = (profile != null) ? profile.getFirstMatch(tDep, criteria) : ProfileFunction.NO_MOVEMENT;
+            if (code == ProfileFunction.NO_MOVEMENT) {
+                throw new IllegalStateException("No movement found from " + stops[stopIdx].getId() + " at "
+                        + TimeConversion.fromSeconds(tDep) + " with " + descriptor.format(criteria));
+            }
+            Movement movement = toMovement(code);
+            movements.add(movement);
 
-            stopId = movement.getPArr().getId();
+            stopIdx = movement.getPArr().getIndex();
+            criteria = descriptor.removeMovement(criteria, movement);
 
             if (movement instanceof Footpath footpath) {
-                criteriaTracker.decFootpathsCount();
                 tDep += footpath.getTravelTime();
-                tripId = null; // means footpath
             } else if (movement instanceof Connection connection) {
                 tDep = connection.getTArr();
-                tripId = connection.getTripId();
-
-                switch (connection.getTransportType()) {
-                    case BUS:
-                        criteriaTracker.decBusesCount();
-                        break;
-                    case METRO:
-                        criteriaTracker.decMetrosCount();
-                        break;
-                    case TRAM:
-                        criteriaTracker.decTramsCount();
-                        break;
-                    case TRAIN:
-                        criteriaTracker.decTrainsCount();
-                        break;
-                }
             }
         }
+
+        return new Journey(tStart, tDep, toLegs(movements, tStart));
     }
 
     /**
-     * Displays the characteristics of the journeys in S's profile and prompts the
-     * user to select one if at least one journey exists. Returns the
-     * CriteriaTracker corresponding to the select journey.
-     * If no journey exists, an empty optional is returned.
+     * Returns the legs of the movements of a journey leaving at tDep: the
+     * consecutive connections of a trip give a single TripLeg, and the footpaths
+     * are walked as soon as possible.
      */
-    Optional<CriteriaTracker> promptJourney(Map<String, ProfileFunction> S, String pDepId, int tDep) {
-        Map<CriteriaTracker, Pair<Integer, Movement>> results = S.get(pDepId).evaluateAt(tDep);
+    private static List<Leg> toLegs(List<Movement> movements, int tDep) {
+        List<Leg> legs = new ArrayList<>();
+        int t = tDep;
+        int i = 0;
+        while (i < movements.size()) {
+            switch (movements.get(i)) {
+                case Footpath footpath -> {
+                    legs.add(new Leg(footpath, t, t + footpath.getTravelTime()));
+                    t += footpath.getTravelTime();
+                    i++;
+                }
+                case Connection first -> {
+                    Connection last = first;
+                    i++;
+                    while (i < movements.size() && movements.get(i) instanceof Connection next
+                            && next.getTripId().equals(first.getTripId())) {
+                        last = next;
+                        i++;
+                    }
+                    legs.add(new Leg(new TripLeg(first.getTripId(), first.getRouteInfo(), first.getPDep(),
+                            last.getPArr(), first.getTDep(), last.getTArr()), first.getTDep(), last.getTArr()));
+                    t = last.getTArr();
+                }
+                default -> throw new IllegalStateException("Unexpected movement: " + movements.get(i));
+            }
+        }
+        return legs;
+    }
 
-        if (results.isEmpty()) {
-            return Optional.empty();
+    /**
+     * Returns the journeys of S's profile leaving pDepId at tDep that are not
+     * dominated by another one, as (criteria, arrival time, first movement)
+     * labels sorted by increasing criteria.
+     */
+    private LabelBuffer paretoJourneys(ProfileFunctionPool S, CriteriaDescriptor descriptor,
+            String pDepId, int tDep) {
+        LabelBuffer results = new LabelBuffer();
+        ProfileFunction sPDep = S.get(stopIdToStop.get(pDepId).getIndex());
+        if (sPDep == null) { // pDepId was not reached
+            return results;
         }
+        sPDep.evaluateAt(tDep, results);
 
-        // find journeys dominated by other journeys that we can take
+        // remove journeys dominated by other journeys that we can take
         // NOTE: Until now, there could be journeys that were dominated by other
         // journeys leaving earlier, but we could not remove the ones leaving later
         // because we didn't know whether we would be able to arrive on time to catch
         // the ones leaving earlier.
         // But since now, we know that we can catch those leaving at tdep, we can remove
         // all the journeys dominated by other journeys leaving at/after tdep.
-        ArrayList<CriteriaTracker> dominatedResults = new ArrayList<>();
-        for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entry0 : results.entrySet()) {
-            for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entry1 : results.entrySet()) {
-
-                CriteriaTracker entry0Criteria = entry0.getKey();
-                int entry0TArr = entry0.getValue().getKey();
-                CriteriaTracker entry1Criteria = entry1.getKey();
-                int entry1TArr = entry1.getValue().getKey();
-
-                if ((entry0Criteria.dominates(entry1Criteria)
-                        && entry0TArr <= entry1TArr) ||
-                        (entry0Criteria.equals(entry1Criteria)
-                                && entry0TArr < entry1TArr)) {
-                    dominatedResults.add(entry1Criteria);
-                }
+        int k = 0;
+        while (k < results.size()) {
+            boolean dominated = false;
+            for (int other = 0; other < results.size() && !dominated; other++) {
+                dominated = ParetoSet.dominates(descriptor, results.getCriteria(other), results.getArrival(other),
+                        results.getCriteria(k), results.getArrival(k));
             }
-        }
 
-        // remove the journeys we found above from results as we have better
-        // alternatives
-        dominatedResults.forEach((dominatedJourneyCriteria) -> results.remove(dominatedJourneyCriteria));
-
-        List<CriteriaTracker> options = new ArrayList<>(results.keySet());
-
-        System.out.println("Possible journeys:");
-        for (int i = 0; i < options.size(); i++) {
-            CriteriaTracker tracker = options.get(i);
-            int tArr = results.get(tracker).getKey();
-            System.out.printf(" [%d] arrives at %s\n", i,
-                    TimeConversion.fromSeconds(tArr));
-            System.out.printf(" %s\n\n", tracker);
-        }
-
-        int choice = -1;
-        while (true) {
-            try {
-                choice = Integer
-                        .parseInt(InteractiveConsole.ask("Enter the number of the journey you want to choose: "));
-                if (choice >= 0 && choice < options.size()) {
-                    break;
-                } else {
-                    System.out.println("Invalid input, please enter a number from the list.");
-                }
-            } catch (NumberFormatException e) {
-                System.out.println("Invalid input, please enter a number.");
+            if (dominated) {
+                results.remove(k);
+            } else {
+                k++;
             }
         }
 
-        return Optional.of(options.get(choice));
-    }
-
-    /**
-     * Updates TauC by adding the given entry in it. If this entry conflicts with
-     * one already in TauC, i.e. there is already another CriteriaTracker with the
-     * same characteristics in TauC, only the one with the best arrival time is
-     * kept in TauC.
-     */
-    private void updateTauC(Map<CriteriaTracker, Pair<Integer, Movement>> tauC, CriteriaTracker criteriaTracker,
-            Pair<Integer, Movement> tArrMovement) {
-
-        Pair<Integer, Movement> pairCurrentlyAtKey = tauC.get(criteriaTracker);
-        if (pairCurrentlyAtKey == null) {
-            tauC.put(criteriaTracker, tArrMovement);
-        } else { // there is already sth for that CriteriaTracker -> update only if it improves
-                 // TArr
-            int entryTArr = tArrMovement.getKey();
-            int pairCurrentlyAtKeyTArr = pairCurrentlyAtKey.getKey();
-
-            if (entryTArr < pairCurrentlyAtKeyTArr) {
-                tauC.put(criteriaTracker, tArrMovement);
-            }
-        }
+        results.sortByCriteria();
+        return results;
     }
 
     /**
      * Solves the multicriteria Connection Scan problem (mcCSA variant), computing
      * Pareto-optimal journeys from a departure stop to an arrival stop, given a
-     * departure time and a CriteriaTracker's derivative (template argument).
+     * departure time and the criteria to optimize.
      *
      * This implementation is based on the two pseudocodes from the article:
      * Julian Dibbelt, Thomas Pajor, Ben Strasser, Dorothea Wagner.
@@ -184,18 +208,16 @@ public class MultiCritSolver extends AbstractSolver {
      * 1. The second optimization criterion differs:
      * The original pseudocode optimizes the number of legs whereas our
      * implementation optimizes the number of movements using certain
-     * transport modes such as bus, tram, train, metro, footpath, using a
-     * `CriteriaTracker` derivative and its overridden `dominates()` logic.
-     * This allows the user to write a `CriteriaTracker` derivative and override
-     * `dominates()` so that it maximizes or minimizes the number of bus-connections
-     * for example.
+     * transport modes such as bus, tram, train, metro, footpath, described by a
+     * `CriteriaDescriptor`. This allows the user to describe the counters to
+     * minimize, e.g. the number of bus-connections, without writing a class.
      *
      * 2. To reconstruct the journey at the end, not only do we store the
      * arrival time for each partial journey but also the last Movement taken for
-     * this journey (both are stored in a Pair). Pay attention to the fact that we
+     * this journey (both are stored in a label). Pay attention to the fact that we
      * build the journeys backwards from pArr, meaning that "last movement taken"
      * means "the next movement to take if we are travelling the journey forward".
-     * Thus, a Pair<Integer, Movement> (tArr, m) can be read as:
+     * Thus, a label (criteria, tArr, m) can be read as:
      * "There exists a partial journey arriving at tArr, and to continue it from
      * here, you must take the movement m."
      *
@@ -205,107 +227,189 @@ public class MultiCritSolver extends AbstractSolver {
      * lines differ slightly and some have been removed as they are irrelevant for
      * our optimization goals (see τ2 below).
      *
-     * @param criteriaTrackerFactory the criteriaTracker factory (depends on the
-     *                               criteria that the caller wants to use)
-     * @param pDepId                 the departure stop ID
-     * @param pArrId                 the arrival stop ID
-     * @param tDep                   the departure time in seconds
+     * @param descriptor the criteria that the caller wants to optimize
+     * @param pDepId     the departure stop ID
+     * @param pArrId     the arrival stop ID
+     * @param tDep       the departure time in seconds
+     *
+     * @return all the Pareto optimal journeys, by increasing arrival time (empty
+     *         if pArrId cannot be reached or if we are already there)
      */
-    public <T extends CriteriaTracker> void solve(Supplier<T> criteriaTrackerFactory, String pDepId, String pArrId,
-            int tDep) {
+    public List<MultiCritJourney> solve(CriteriaDescriptor descriptor, String pDepId, String pArrId, int tDep) {
 
         if (pDepId.equals(pArrId)) {
-            System.out.println("You are already at your destination");
-            return;
+            return List.of();
+        }
+
+        List<MultiCritJourney> extracted = new ArrayList<>();
+        try (QueryWorkspace ws = workspaces.acquire()) {
+            ProfileFunctionPool S = computeProfiles(ws, descriptor, pArrId, tDep,
+                    getTArrMax(ws, pDepId, pArrId, tDep));
+
+            LabelBuffer results = paretoJourneys(S, descriptor, pDepId, tDep);
+            for (int i = 0; i < results.size(); i++) {
+                extracted.add(new MultiCritJourney(descriptor, results.getCriteria(i),
+                        extractJourney(S, pDepId, pArrId, tDep, descriptor, results.getCriteria(i))));
+            }
+        }
+
+        // A journey may arrive earlier than its label, as its footpaths are walked as
+        // soon as possible (e.g. a direct walk to pArr is only stored in the profiles
+        // as leaving when a connection arrives at pDep): the journeys now dominated
+        // are left out.
+        List<MultiCritJourney> journeys = new ArrayList<>();
+        for (MultiCritJourney journey : extracted) {
+            boolean dominated = false;
+            for (int other = 0; other < extracted.size() && !dominated; other++) {
+                dominated = ParetoSet.dominates(descriptor, extracted.get(other).getCriteria(),
+                        extracted.get(other).getTArr(), journey.getCriteria(), journey.getTArr());
+            }
+            if (!dominated) {
+                journeys.add(journey);
+            }
+        }
+        journeys.sort(Comparator.comparingInt(MultiCritJourney::getTArr));
+
+        return journeys;
+    }
+
+    /**
+     * Runs the backward scan of solve in the workspace, returning the profile
+     * function of each stop (by stop index, valid until the workspace is reused).
+     * Only the journeys arriving at or before tArrMax are searched.
+     */
+    private ProfileFunctionPool computeProfiles(QueryWorkspace ws, CriteriaDescriptor descriptor, String pArrId,
+            int tDep, int tArrMax) {
+        // stopIdx -> footpath to pArr (dest), -1 if too far (reset after the scan)
+        // In the original pseudocode (figure 11), D only stores the footpath's
+        // travel times but we store the footpaths (their incoming edge of pArr in
+        // the footpath graph) to store them in the profiles.
+        int[] D = ws.finalFootpathEdge;
+
+        // for all footpaths f with farr stop = target do D[x] ← fdur;
+        // We store the footpaths instead of the footpath's travel time.
+        int pArrIdx = stopIdToStop.get(pArrId).getIndex();
+        for (int edge = footpaths.inStart[pArrIdx]; edge < footpaths.inStart[pArrIdx + 1]; edge++) {
+            D[footpaths.inStop[edge]] = edge;
+        }
+
+        try {
+            return computeProfiles(ws, descriptor, pArrId, tDep, tArrMax, D);
+        } finally {
+            for (int edge = footpaths.inStart[pArrIdx]; edge < footpaths.inStart[pArrIdx + 1]; edge++) {
+                D[footpaths.inStop[edge]] = -1;
+            }
         }
+    }
+
+    /**
+     * Same as above, D holding the footpath from each stop to pArrId.
+     */
+    private ProfileFunctionPool computeProfiles(QueryWorkspace ws, CriteriaDescriptor descriptor, String pArrId,
+            int tDep, int tArrMax, int[] D) {
 
         // ### init data structure
 
-        // stopId -> stop's ProfileFunction
-        Map<String, ProfileFunction> S = new HashMap<>();
+        // stop index -> stop's ProfileFunction
+        ProfileFunctionPool S = ws.getProfileFunctions();
+
+        // scratch label buffers of the scan, refilled for every connection
+        LabelBuffer tauC = ws.tauC;
+        LabelBuffer evaluated = ws.evaluated;
+        LabelBuffer walked = ws.walked;
 
-        // tripId -> Map<CriteriaTracker -> (tArr for this journey + last Movement
+        // tripId -> Map<criteria -> (tArr for this journey + last Movement
         // taken)>
-        // Map<String, Map<CriteriaTracker, Pair<Integer, Movement>>> T = new
+        // Map<String, LabelBuffer> T = new
         // HashMap<>();
 
-        // stopId -> footpath to pArr (dest)
-        // In the original pseudocode (figure 11), D only stores the footpath's
-        // travel times but we store the Footpath objects directly.
-        Map<String, Footpath> D = new HashMap<>();
-
         // We don't initalize the default values for all stops/trips with
-        // infinities as this is not necessary because the absence of a key in the
-        // hashmap already represents the default value.
-
-        // for all footpaths f with farr stop = target do D[x] ← fdur;
-        // We store the footpaths directly instead of the footpath's travel time.
-        stopIdToIncomingFootpaths.getOrDefault(pArrId, new ArrayList<>()).forEach(footpath -> {
-            D.put(footpath.getPDep().getId(), footpath);
-        });
+        // infinities as this is not necessary because D (filled by the caller)
+        // holds -1 for the stops too far from pArr.
 
         // for all stops x do S[x] ← {(∞, ∞)}
-        stopIdToStop.forEach((stopId, stop) -> {
-            S.put(stopId, new ProfileFunction());
-        });
+        // (The profiles are only created/reset when the stops are reached.)
+        S.clear(descriptor);
 
         // for all trips x do T [x] ← ∞;
         // tripIds.forEach(tripId -> {
-        // T.put(tripId, new HashMap<>());
+        // T.put(tripId, new LabelBuffer());
         // });
 
         // ### Actual algorithm
 
-        for (Connection c : getFilteredConnections(tDep).reversed()) {
-            if (c.getPDep().getId().equals(pArrId)) {
+        // scan the connections departing at/after tDep by decreasing departure time,
+        // starting from the last one departing by tArrMax (the later ones cannot be
+        // part of a journey arriving by tArrMax)
+        int pArrIdx = stopIdToStop.get(pArrId).getIndex();
+        int firstReachableConnectionIdx = getEarliestReachableConnectionIdx(tDep);
+        int lastRelevantConnectionIdx = (tArrMax == Integer.MAX_VALUE) ? connections.size() - 1
+                : getEarliestReachableConnectionIdx(tArrMax + 1) - 1;
+        for (int i = lastRelevantConnectionIdx; i >= firstReachableConnectionIdx; i--) {
+            // (the attributes of the connection are read from the columns of the table)
+            int cPDepIdx = connections.pDepIdx[i];
+            int cPArrIdx = connections.pArrIdx[i];
+            int cTDep = connections.tDep[i];
+            int cTArr = connections.tArr[i];
+            if (cTArr > tArrMax) {
+                continue;
+            }
+
+            if (cPDepIdx == pArrIdx) {
                 // avoid stupid loops, e.g. if our dest is A and the algorithm scans a
                 // connection c from A to B, without this "continue", it will consider the
                 // journeys that take the connection c and then come back to A.
                 continue;
             }
 
+            // c is stored in the profiles as the movement to take (its index i), its
+            // transport type is enough to compute the criteria
+            TransportType cTransportType = connections.getRouteInfo(i).getTransportType();
+
             // τc ← min{τ1, τ2, τ3};
             // In the original pseudocode (figure 11) τ1, τ2, τ3 are caculated separately
             // and then merged to create τc. Our implementation directly updates tauC
-            // without creating tau1/2/3 temporarily.
-            Map<CriteriaTracker, Pair<Integer, Movement>> tauC = new HashMap<>();
+            // without creating tau1/2/3 temporarily. (For each criteria, tauC only keeps
+            // the label with the best arrival time.)
+            tauC.clear();
 
-            ProfileFunction sCPArr = S.get(c.getPArr().getId());
+            // (null if nothing has been inserted yet in c.pArr's profile)
+            ProfileFunction sCPArr = S.get(cPArrIdx);
 
             // τ1 : corresponds to "take c and then walk to pArr"
             // Since D doesn't store travel times but footpaths, and there is no footpath
             // from pArr to pArr, we have to handle separately the case where the connection
             // directly arrives at pArr. (In the original pseudocode, since the travel time
             // from pArr to pArr is 0, this was done without splitting it in two cases).
-            if (c.getPArr().getId().equals(pArrId)) { // no need to walk if we arrive directly at pArrId
-                CriteriaTracker newTracker = criteriaTrackerFactory.get().addMovement(c);
-                int tArr = c.getTArr();
+            if (cPArrIdx == pArrIdx) { // no need to walk if we arrive directly at pArrId
+                long newCriteria = descriptor.addConnection(descriptor.empty(), cTransportType);
 
-                updateTauC(tauC, newTracker, new Pair<>(tArr, c));
+                tauC.improve(newCriteria, cTArr, i);
             } else { // doesn't arrive directly at target -> must walk to target
 
                 // In practice, the path that leads to pArr may not exist if it is too long to
                 // travel.
-                Footpath finalFootpath = D.get(c.getPArr().getId());
+                int finalFootpathEdge = D[cPArrIdx];
 
-                if (finalFootpath != null) {
+                // (the walk must not make the journey arrive after tArrMax either)
+                if (finalFootpathEdge != -1 && cTArr + footpaths.inDuration[finalFootpathEdge] <= tArrMax) {
                     // from pseudocode figure 9: τ1 ← carr time + D[carr stop]
                     // (The arrival time is the arrival time of the connection + the time to walk to
                     // the destination).
-                    int tArrWithfootpath = c.getTArr() + finalFootpath.getTravelTime();
-
-                    CriteriaTracker newTracker = criteriaTrackerFactory.get().addMovement(finalFootpath).addMovement(c);
+                    int tArrWithfootpath = cTArr + footpaths.inDuration[finalFootpathEdge];
 
-                    updateTauC(tauC, newTracker, new Pair<>(tArrWithfootpath, c));
+                    long finalFootpathNewCriteria = descriptor.addFootpath(descriptor.empty());
+                    long newCriteria = descriptor.addConnection(finalFootpathNewCriteria, cTransportType);
 
-                    int foopathTDep = c.getTArr();
+                    tauC.improve(newCriteria, tArrWithfootpath, i);
 
-                    CriteriaTracker finalFootpathNewTracker = criteriaTrackerFactory.get().addMovement(finalFootpath);
+                    int foopathTDep = cTArr;
 
                     // insert the footpath in c.pArr's profile
-                    sCPArr.insert(foopathTDep,
-                            new HashMap<>(Map.of(finalFootpathNewTracker,
-                                    new Pair<>(tArrWithfootpath, finalFootpath))));
+                    walked.clear();
+                    walked.add(finalFootpathNewCriteria, tArrWithfootpath, footpathMovement(finalFootpathEdge));
+                    sCPArr = S.reach(cPArrIdx);
+                    sCPArr.insert(foopathTDep, walked);
                 }
             }
 
@@ -323,14 +427,11 @@ public class MultiCritSolver extends AbstractSolver {
             // in case we ever want to add a trip-level criterion such as number of
             // legs/transfers.
             //
-            // T.get(c.getTripId())
-            // .entrySet()
-            // .forEach(entry -> {
-            // int tArr = entry.getValue().getKey();
-            // CriteriaTracker prevTracker = entry.getKey();
-            // CriteriaTracker newTracker = prevTracker.addMovement(c);
-            // updateTauC(tauC, newTracker, new Pair<>(tArr, c));
-            // });
+            // LabelBuffer tauTrip = T.get(c.getTripId());
+            // for (int k = 0; k < tauTrip.size(); k++) {
+            // long newCriteria = descriptor.addConnection(tauTrip.getCriteria(k), cTransportType);
+            // tauC.improve(newCriteria, tauTrip.getArrival(k), i);
+            // }
 
             // τ3 ← evaluate S[carr stop] at carr time;
             //
@@ -340,86 +441,51 @@ public class MultiCritSolver extends AbstractSolver {
             // As explained for τ2 our algorithm doesn't take number of transfers and other
             // trip-related data into account.
             // Therefore, in our algorithm, c is just like any other connection (no matter
-            // which trip it belongs to) that should be considered for CriteriaTracker.
-            sCPArr.evaluateAt(c.getTArr())
-                    .entrySet()
-                    .forEach(entry -> {
-                        int tArr = entry.getValue().getKey();
-                        CriteriaTracker prevTracker = entry.getKey();
-
-                        // For example, if c is a bus-connection, and our criteriaTracker takes the
-                        // number of buses connections into account, the busesCount would be increased
-                        // in addMovement.
-                        CriteriaTracker newTracker = prevTracker.addMovement(c);
-                        updateTauC(tauC, newTracker, new Pair<>(tArr, c));
-                    });
+            // which trip it belongs to) that should be considered for the criteria.
+            if (sCPArr != null) {
+                sCPArr.evaluateAt(cTArr, evaluated);
+            } else {
+                evaluated.clear();
+            }
+            for (int k = 0; k < evaluated.size(); k++) {
+                // For example, if c is a bus-connection, and our criteria count the number
+                // of buses connections, the buses counter would be increased in
+                // addConnection.
+                long newCriteria = descriptor.addConnection(evaluated.getCriteria(k), cTransportType);
+                tauC.improve(newCriteria, evaluated.getArrival(k), i);
+            }
 
             // insert a copy of tauC into T[ctrip] (not necessary since we don't use tau2)
-            // T.put(c.getTripId(),
-            // tauC.entrySet().stream()
-            // .collect(Collectors.toMap(
-            // e -> e.getKey().copy(),
-            // e -> new Pair<>(e.getValue().getKey(), e.getValue().getValue()))));
+            // T.get(c.getTripId()) <- copy of tauC
 
-            ProfileFunction sCPDep = S.get(c.getPDep().getId());
-            boolean atLeastOneNotDominated = sCPDep.insert(c.getTDep(), tauC);
+            // (c.pDep's profile is only reached if there is something to insert)
+            ProfileFunction sCPDep = tauC.isEmpty() ? null : S.reach(cPDepIdx);
+            boolean atLeastOneNotDominated = sCPDep != null && sCPDep.insert(cTDep, tauC);
 
             // Propagate into incoming footpaths only if at least one entry from tauC was
             // actually inserted (not dominated) in c.pDep. (A partial journey being
             // dominated in c.pDep implies that it is also dominated in incoming footpaths
             // of c.pDep).
             if (atLeastOneNotDominated) {
-                Map<CriteriaTracker, Pair<Integer, Movement>> sCPDepEvaluatedAtCTDep = sCPDep.evaluateAt(c.getTDep());
+                sCPDep.evaluateAt(cTDep, evaluated);
 
-                for (Footpath f : stopIdToIncomingFootpaths.getOrDefault(c.getPDep().getId(), EMPTY_FOOTPATH_LIST)) {
-                    int fTDep = c.getTDep() - f.getTravelTime();
+                for (int edge = footpaths.inStart[cPDepIdx]; edge < footpaths.inStart[cPDepIdx + 1]; edge++) {
+                    int fTDep = cTDep - footpaths.inDuration[edge];
                     if (fTDep > tDep) {
-
-                        Map<CriteriaTracker, Pair<Integer, Movement>> map = sCPDepEvaluatedAtCTDep
-                                .entrySet()
-                                .stream()
-                                .collect(Collectors.toMap(
-                                        e -> {
-                                            CriteriaTracker prevTracker = e.getKey();
-                                            CriteriaTracker newTracker = prevTracker.addMovement(f);
-                                            return newTracker;
-                                        },
-                                        e -> new Pair<>(e.getValue().getKey(), f)));
-
-                        S.get(f.getPDep().getId()).insert(fTDep, map);
+                        // (the criteria stay distinct, as the footpath is added to all of them)
+                        walked.clear();
+                        for (int k = 0; k < evaluated.size(); k++) {
+                            walked.add(descriptor.addFootpath(evaluated.getCriteria(k)), evaluated.getArrival(k),
+                                    footpathMovement(edge));
+                        }
+
+                        S.reach(footpaths.inStop[edge]).insert(fTDep, walked);
                     }
                 }
             }
         }
 
-        System.out.println("prompting journey");
-        Optional<CriteriaTracker> optCriteriaTracker = promptJourney(S, pDepId, tDep);
-
-        optCriteriaTracker.ifPresentOrElse(
-                criteriaTracker -> displayJourney(S, pDepId, pArrId, tDep, criteriaTracker),
-                () -> System.out.println("no journey found"));
-    }
-
-    /**
-     * Generates all the footpaths.
-     */
-    private void genFootpaths(double maxDistKm) {
-        BallTree ballTree = new BallTree(new ArrayList<>(stopIdToStop.values()));
-        for (Stop sourceStop : stopIdToStop.values()) {
-
-            List<Stop> nearbyStops = ballTree.findStopsWithinRadius(sourceStop, maxDistKm);
-
-            for (Stop arrStop : nearbyStops) {
-                if (!sourceStop.equals(arrStop)) {
-                    Footpath footpath = new Footpath(sourceStop, arrStop);
-
-                    stopIdToIncomingFootpaths
-                            .computeIfAbsent(arrStop.getId(), k -> new ArrayList<>())
-                            .add(footpath);
-                }
-            }
-        }
-
+        return S;
     }
 
 }
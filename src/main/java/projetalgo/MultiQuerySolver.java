@@ -0,0 +1,420 @@
+package projetalgo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Earliest arrival solver running up to 64 queries in a single scan of the
+ * connections (each query having its own departure stops, arrival stops and
+ * departure time), to speed up the workloads repeating the same scan for many
+ * departure times or many origins.
+ *
+ * Each query is a lane of a 64-bit mask: the trips reached are stored as one
+ * mask per trip, and the arrival labels of the lanes of a stop are stored next
+ * to each other, with the mask of the lanes already arrived at the stop. The
+ * traversal of the connections and of the footpaths is shared by all the
+ * lanes, and the lanes boarding a connection are found with a few mask
+ * operations.
+ *
+ * The arrival times are the same as the ones of Solver.solve run on each query.
+ * The journeys can also be reconstructed: the movement to each stop is kept
+ * for each lane, as in Solver, and the connection boarding each trip reached is
+ * kept for each lane of the trip.
+ *
+ * A solver holds the state of its scan: it must not be shared by concurrent
+ * queries (BatchRunner keeps one per worker thread).
+ */
+public class MultiQuerySolver extends AbstractSolver {
+    public static final int MAX_QUERIES = Long.SIZE;
+
+    private final FootpathGraph footpaths;
+
+    // Per-stop labels: the arrival time of each lane at stop s is
+    // earliestArrival[s * nLanes + lane], and the movement to get there (see
+    // Solver) parentMovement[s * nLanes + lane]. arrivedMask[s] is the mask of the lanes
+    // known to be at s by the time of the connection being scanned, and
+    // pendingArrival[s] the earliest arrival time of the other lanes: the mask
+    // only has to be recomputed when the scan reaches that time. They are only
+    // valid if their stamp equals the current epoch.
+    private final int[] earliestArrival;
+    private final int[] parentMovement;
+    private final long[] arrivedMask;
+    private final int[] pendingArrival;
+    private final int[] stamp;
+    private int nLanes;
+    private int epoch;
+
+    // Per-trip mask of the lanes that reached the trip, valid if tripStamp equals
+    // epoch. The connection each lane boarded trip t with is
+    // boardingConnection[tripSlot[t] * MAX_QUERIES + lane], the slots being
+    // given to the trips in the order they are reached by the scan.
+    private final long[] tripMask;
+    private final int[] tripStamp;
+    private final int[] tripSlot;
+    private int[] boardingConnection = new int[64 * MAX_QUERIES];
+    private int nSlots;
+
+    // Mask of the lanes for which each stop is an arrival stop (cleared after each
+    // scan), the earliest arrival of each lane at one of its arrival stops, and
+    // the earliest of them for the lanes still active.
+    private final long[] targetMask;
+    private final int[] laneBest = new int[MAX_QUERIES];
+    private int nextDoneTime;
+
+    public MultiQuerySolver(Data data) {
+        super(data);
+
+        this.footpaths = data.footpaths;
+
+        this.earliestArrival = new int[stops.length * MAX_QUERIES];
+        this.parentMovement = new int[stops.length * MAX_QUERIES];
+        this.arrivedMask = new long[stops.length];
+        this.pendingArrival = new int[stops.length];
+        this.stamp = new int[stops.length];
+        this.tripMask = new long[connections.tripIds.length];
+        this.tripStamp = new int[connections.tripIds.length];
+        this.tripSlot = new int[connections.tripIds.length];
+        this.targetMask = new long[stops.length];
+        this.epoch = 0;
+    }
+
+    /**
+     * Invalidates all the labels of the previous scan.
+     */
+    private void nextEpoch() {
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(tripStamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        nSlots = 0;
+    }
+
+    private int getBestKnownArrivalTime(int stopIdx, int lane) {
+        return (stamp[stopIdx] == epoch) ? earliestArrival[stopIdx * nLanes + lane] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the mask of the lanes among the given ones that improve their
+     * arrival time at the given stop with tArr (with the given movement), and
+     * updates their labels.
+     */
+    private long improve(int stopIdx, long lanes, int tArr, int movement) {
+        int base = stopIdx * nLanes;
+        if (stamp[stopIdx] != epoch) {
+            stamp[stopIdx] = epoch;
+            Arrays.fill(earliestArrival, base, base + nLanes, Integer.MAX_VALUE);
+            arrivedMask[stopIdx] = 0;
+            pendingArrival[stopIdx] = Integer.MAX_VALUE;
+        }
+
+        // the lanes already arrived arrived by the time of the scan, so before tArr
+        long improved = 0;
+        for (long m = lanes & ~arrivedMask[stopIdx]; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            if (tArr < earliestArrival[base + lane]) {
+                earliestArrival[base + lane] = tArr;
+                parentMovement[base + lane] = movement;
+                improved |= 1L << lane;
+            }
+        }
+
+        if (improved != 0) {
+            // the scan never goes back in time, so the improved lanes were not
+            // arrived yet
+            pendingArrival[stopIdx] = Math.min(pendingArrival[stopIdx], tArr);
+
+            for (long m = improved & targetMask[stopIdx]; m != 0; m &= m - 1) {
+                int lane = Long.numberOfTrailingZeros(m);
+                laneBest[lane] = Math.min(laneBest[lane], tArr);
+            }
+            if ((improved & targetMask[stopIdx]) != 0) {
+                nextDoneTime = Math.min(nextDoneTime, tArr);
+            }
+        }
+
+        return improved;
+    }
+
+    /**
+     * Relaxes the footpaths leaving the given stop for the given lanes, all of
+     * them having arrived at the stop at tArr.
+     */
+    private void relaxFootpaths(int stopIdx, long lanes, int tArr) {
+        for (int e = footpaths.outStart[stopIdx]; e < footpaths.outStart[stopIdx + 1]; e++) {
+            improve(footpaths.outStop[e], lanes, tArr + footpaths.outDuration[e], Solver.footpathMovement(stopIdx));
+        }
+    }
+
+    /**
+     * Returns the mask of the lanes whose arrival time at the given stop is at
+     * most t, t being no earlier than in the previous calls of the scan.
+     */
+    private long lanesArrivedBy(int stopIdx, int t) {
+        if (stamp[stopIdx] != epoch) {
+            return 0;
+        }
+
+        if (pendingArrival[stopIdx] <= t) {
+            int base = stopIdx * nLanes;
+            long arrived = arrivedMask[stopIdx];
+            int pending = Integer.MAX_VALUE;
+            for (long m = ~arrived & laneMask(); m != 0; m &= m - 1) {
+                int lane = Long.numberOfTrailingZeros(m);
+                int tArr = earliestArrival[base + lane];
+                if (tArr <= t) {
+                    arrived |= 1L << lane;
+                } else {
+                    pending = Math.min(pending, tArr);
+                }
+            }
+            arrivedMask[stopIdx] = arrived;
+            pendingArrival[stopIdx] = pending;
+        }
+
+        return arrivedMask[stopIdx];
+    }
+
+    /**
+     * Returns the mask of all the lanes of the scan.
+     */
+    private long laneMask() {
+        return (nLanes == MAX_QUERIES) ? -1L : (1L << nLanes) - 1;
+    }
+
+    /**
+     * Returns the mask of the active lanes that are done at time t: they already
+     * arrived at one of their arrival stops by t, so none of the connections
+     * departing from t on can make them arrive earlier.
+     */
+    private long lanesDoneBy(long activeLanes, int t) {
+        long done = 0;
+        for (long m = activeLanes; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            if (laneBest[lane] <= t) {
+                done |= 1L << lane;
+            }
+        }
+        return done;
+    }
+
+    private int earliestLaneBest(long activeLanes) {
+        int earliest = Integer.MAX_VALUE;
+        for (long m = activeLanes; m != 0; m &= m - 1) {
+            earliest = Math.min(earliest, laneBest[Long.numberOfTrailingZeros(m)]);
+        }
+        return earliest;
+    }
+
+    /**
+     * Records the connection the given lanes board the trip with.
+     */
+    private void board(int trip, long lanes, int connectionIdx) {
+        if (tripStamp[trip] != epoch) {
+            tripStamp[trip] = epoch;
+            tripMask[trip] = 0;
+            if ((nSlots + 1) * MAX_QUERIES > boardingConnection.length) {
+                boardingConnection = Arrays.copyOf(boardingConnection, boardingConnection.length * 2);
+            }
+            tripSlot[trip] = nSlots++;
+        }
+        tripMask[trip] |= lanes;
+
+        int base = tripSlot[trip] * MAX_QUERIES;
+        for (long m = lanes; m != 0; m &= m - 1) {
+            boardingConnection[base + Long.numberOfTrailingZeros(m)] = connectionIdx;
+        }
+    }
+
+    /**
+     * Reconstructs the journey of the lane leaving at tDep to the given arrival
+     * stop, as Solver.reconstructSolution.
+     */
+    private Journey reconstructJourney(int lane, int pArrIdx, int tDep) {
+        List<Leg> legs = new ArrayList<>();
+        int currentStopIdx = pArrIdx;
+        int movement;
+        while ((movement = parentMovement[currentStopIdx * nLanes + lane]) != Solver.NO_MOVEMENT) {
+            int tArr = earliestArrival[currentStopIdx * nLanes + lane];
+            if (movement >= 0) {
+                int trip = connections.tripIdx[movement];
+                int boarding = boardingConnection[tripSlot[trip] * MAX_QUERIES + lane];
+                legs.add(new Leg(new TripLeg(connections.tripIds[trip], connections.getRouteInfo(movement),
+                        stops[connections.pDepIdx[boarding]], stops[currentStopIdx], connections.tDep[boarding], tArr),
+                        connections.tDep[boarding], tArr));
+                currentStopIdx = connections.pDepIdx[boarding];
+            } else {
+                int footpathPDepIdx = Solver.footpathPDepIdx(movement);
+                int duration = footpaths.getDuration(footpathPDepIdx, currentStopIdx);
+                legs.add(new Leg(new Footpath(stops[footpathPDepIdx], stops[currentStopIdx], duration),
+                        tArr - duration, tArr));
+                currentStopIdx = footpathPDepIdx;
+            }
+        }
+
+        Collections.reverse(legs);
+        return new Journey(tDep, earliestArrival[pArrIdx * nLanes + lane], legs);
+    }
+
+    /**
+     * Runs the queries lanes[0..nLanes) in a single scan and stores their arrival
+     * times in tArrs, and their journeys in journeys if it is not null.
+     */
+    private void scan(int[][] pDepIdxs, int[][] pArrIdxs, int[] tDeps, int[] lanes, int[] tArrs,
+            List<Optional<Journey>> journeys) {
+        nextEpoch();
+
+        int tDepMin = Integer.MAX_VALUE;
+        Arrays.fill(laneBest, Integer.MAX_VALUE);
+        nextDoneTime = Integer.MAX_VALUE;
+        for (int lane = 0; lane < nLanes; lane++) {
+            tDepMin = Math.min(tDepMin, tDeps[lanes[lane]]);
+            for (int pArrIdx : pArrIdxs[lanes[lane]]) {
+                targetMask[pArrIdx] |= 1L << lane;
+            }
+        }
+
+        for (int lane = 0; lane < nLanes; lane++) {
+            int tDep = tDeps[lanes[lane]];
+            for (int pDepIdx : pDepIdxs[lanes[lane]]) {
+                // The time to get to pDep is tDep because we are already there
+                improve(pDepIdx, 1L << lane, tDep, Solver.NO_MOVEMENT);
+            }
+        }
+        for (int lane = 0; lane < nLanes; lane++) {
+            int tDep = tDeps[lanes[lane]];
+            for (int pDepIdx : pDepIdxs[lanes[lane]]) {
+                // Footpaths initial setup
+                relaxFootpaths(pDepIdx, 1L << lane, tDep);
+            }
+        }
+
+        final int[] cPDepIdx = connections.pDepIdx;
+        final int[] cPArrIdx = connections.pArrIdx;
+        final int[] cTDep = connections.tDep;
+        final int[] cTArr = connections.tArr;
+        final int[] cTripIdx = connections.tripIdx;
+
+        long activeLanes = laneMask();
+
+        for (int i = getEarliestReachableConnectionIdx(tDepMin); i < connections.size(); i++) {
+            // a lane is done as soon as a connection departs after its arrival
+            if (cTDep[i] >= nextDoneTime) {
+                activeLanes &= ~lanesDoneBy(activeLanes, cTDep[i]);
+                if (activeLanes == 0) {
+                    break;
+                }
+                nextDoneTime = earliestLaneBest(activeLanes);
+            }
+
+            int trip = cTripIdx[i];
+            long reached = (tripStamp[trip] == epoch) ? tripMask[trip] & activeLanes : 0;
+
+            // boarding: τ (pdep(c)) ≤ τdep(c), for the lanes not yet in the trip
+            long boarding = lanesArrivedBy(cPDepIdx[i], cTDep[i]) & activeLanes & ~reached;
+            if (boarding != 0) {
+                board(trip, boarding, i);
+                reached |= boarding;
+            }
+
+            if (reached == 0) {
+                continue;
+            }
+
+            // τarr(c) < τ (parr(c)), then the footpaths are relaxed for the lanes
+            // improved (they all arrive at cTArr)
+            long improved = improve(cPArrIdx[i], reached, cTArr[i], i);
+            if (improved != 0) {
+                relaxFootpaths(cPArrIdx[i], improved, cTArr[i]);
+            }
+        }
+
+        for (int lane = 0; lane < nLanes; lane++) {
+            // (the first of the arrival stops reached the earliest, as in Solver)
+            int tArrEarliest = Integer.MAX_VALUE;
+            int pArrIdxEarliest = -1;
+            for (int pArrIdx : pArrIdxs[lanes[lane]]) {
+                int tArr = getBestKnownArrivalTime(pArrIdx, lane);
+                if (tArr < tArrEarliest) {
+                    tArrEarliest = tArr;
+                    pArrIdxEarliest = pArrIdx;
+                }
+                targetMask[pArrIdx] = 0;
+            }
+            tArrs[lanes[lane]] = tArrEarliest;
+            if (journeys != null && pArrIdxEarliest != -1) {
+                journeys.set(lanes[lane], Optional.of(reconstructJourney(lane, pArrIdxEarliest, tDeps[lanes[lane]])));
+            }
+        }
+    }
+
+    /**
+     * Computes the earliest arrival time of each query, leaving one of
+     * pDepIdxs[q] at tDeps[q] to one of pArrIdxs[q]. The queries are run by
+     * groups of MAX_QUERIES with close departure times, so that each scan covers a
+     * short time range.
+     *
+     * @return the arrival time of each query, Solver.UNREACHABLE if its arrival
+     *         stops cannot be reached
+     */
+    public int[] solve(int[][] pDepIdxs, int[][] pArrIdxs, int[] tDeps) {
+        return solve(pDepIdxs, pArrIdxs, tDeps, null);
+    }
+
+    private int[] solve(int[][] pDepIdxs, int[][] pArrIdxs, int[] tDeps, List<Optional<Journey>> journeys) {
+        if (pDepIdxs.length != tDeps.length || pArrIdxs.length != tDeps.length) {
+            throw new IllegalArgumentException("Expected as many departure stops, arrival stops and departure times");
+        }
+
+        // the queries sorted by departure time, packing the departure time and the
+        // query index in a long
+        long[] sorted = new long[tDeps.length];
+        for (int q = 0; q < tDeps.length; q++) {
+            sorted[q] = ((long) tDeps[q] << 32) | q;
+        }
+        Arrays.sort(sorted);
+
+        int[] tArrs = new int[tDeps.length];
+        int[] lanes = new int[MAX_QUERIES];
+        for (int from = 0; from < tDeps.length; from += MAX_QUERIES) {
+            nLanes = Math.min(MAX_QUERIES, tDeps.length - from);
+            for (int lane = 0; lane < nLanes; lane++) {
+                lanes[lane] = (int) sorted[from + lane];
+            }
+            scan(pDepIdxs, pArrIdxs, tDeps, lanes, tArrs, journeys);
+        }
+        return tArrs;
+    }
+
+    /**
+     * Same as above with stop ids.
+     */
+    public int[] solve(List<List<String>> pDepIds, List<List<String>> pArrIds, int[] tDeps) {
+        return solve(toStopIdxsOfQueries(pDepIds), toStopIdxsOfQueries(pArrIds), tDeps);
+    }
+
+    /**
+     * Returns the journey of each query, as Solver.solve: empty if its arrival
+     * stops cannot be reached, without legs if one of its departure stops is an
+     * arrival stop.
+     */
+    public List<Optional<Journey>> solveJourneys(List<List<String>> pDepIds, List<List<String>> pArrIds,
+            int[] tDeps) {
+        List<Optional<Journey>> journeys = new ArrayList<>(Collections.nCopies(tDeps.length, Optional.empty()));
+        solve(toStopIdxsOfQueries(pDepIds), toStopIdxsOfQueries(pArrIds), tDeps, journeys);
+        return journeys;
+    }
+
+    private int[][] toStopIdxsOfQueries(List<List<String>> stopIds) {
+        int[][] stopIdxs = new int[stopIds.size()][];
+        for (int q = 0; q < stopIdxs.length; q++) {
+            stopIdxs[q] = toStopIdxs(stopIds.get(q));
+        }
+        return stopIdxs;
+    }
+
+}
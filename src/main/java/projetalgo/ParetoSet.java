@@ -0,0 +1,152 @@
+package projetalgo;
+
+import java.util.Arrays;
+
+/**
+ * Set of (criteria, arrival time) labels that do not dominate each other,
+ * sorted by increasing arrival time.
+ *
+ * A label dominates another one if its criteria dominate the other's and it
+ * arrives no later, or if it has the same criteria and arrives strictly
+ * earlier. Since the labels of the set do not dominate each other, the ones
+ * arriving later have criteria that are not worse: the dominance checks start
+ * from the label arriving closest to the new one (found by binary search) and
+ * stop at the first label whose criteria decide. When the criteria are totally
+ * ordered (e.g. a single counter), that is the first label checked.
+ */
+class ParetoSet {
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
+
+    private CriteriaDescriptor descriptor;
+    private long[] criteria = NO_LONGS;
+    private int[] arrivals = NO_INTS;
+    private int size = 0;
+
+    ParetoSet(CriteriaDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Returns true if the label (crit, tArr) dominates the label (otherCrit,
+     * otherTArr).
+     */
+    static boolean dominates(CriteriaDescriptor descriptor, long crit, int tArr, long otherCrit, int otherTArr) {
+        return (descriptor.dominates(crit, otherCrit) && tArr <= otherTArr) || (crit == otherCrit && tArr < otherTArr);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getCriteria(int k) {
+        return criteria[k];
+    }
+
+    int getArrival(int k) {
+        return arrivals[k];
+    }
+
+    /**
+     * Empties the set, which will hold labels with the given criteria.
+     */
+    void reset(CriteriaDescriptor descriptor) {
+        this.descriptor = descriptor;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of labels arriving before t (they are the first ones).
+     */
+    private int countArrivingBefore(int t) {
+        return (t == Integer.MIN_VALUE) ? 0 : countArrivingBy(t - 1);
+    }
+
+    /**
+     * Returns the number of labels arriving at or before t (they are the first
+     * ones).
+     */
+    private int countArrivingBy(int t) {
+        int i = 0;
+        int j = size;
+        while (i < j) {
+            int mid = (i + j) >>> 1;
+            if (arrivals[mid] <= t) {
+                i = mid + 1;
+            } else {
+                j = mid;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns true if a label of the set dominates (crit, tArr).
+     */
+    boolean isDominated(long crit, int tArr) {
+        // only the labels arriving no later than tArr can dominate it
+        int k = (size > 0 && arrivals[size - 1] <= tArr) ? size - 1 : countArrivingBy(tArr) - 1;
+        for (; k >= 0; k--) {
+            if (dominates(descriptor, criteria[k], arrivals[k], crit, tArr)) {
+                return true;
+            }
+            // the labels arriving earlier cannot dominate it either (they would dominate
+            // this one)
+            if (crit == criteria[k] || descriptor.dominates(crit, criteria[k])) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds (crit, tArr) to the set unless it is dominated, removing the labels it
+     * dominates.
+     *
+     * @return true if the label was added
+     */
+    boolean add(long crit, int tArr) {
+        if (isDominated(crit, tArr)) {
+            return false;
+        }
+
+        // only the labels arriving no earlier than tArr can be dominated by it, they
+        // are compacted in [from, write)
+        int from = countArrivingBefore(tArr);
+        int write = from;
+        int k = from;
+        for (; k < size; k++) {
+            if (dominates(descriptor, crit, tArr, criteria[k], arrivals[k])) {
+                continue;
+            }
+            if (criteria[k] == crit && arrivals[k] == tArr) {
+                return false; // already in the set (then nothing was removed)
+            }
+            // the labels arriving later cannot be dominated either (this one would
+            // dominate them)
+            if (criteria[k] == crit || descriptor.dominates(criteria[k], crit)) {
+                break;
+            }
+            criteria[write] = criteria[k];
+            arrivals[write] = arrivals[k];
+            write++;
+        }
+
+        if (size + 1 > arrivals.length) {
+            int capacity = Math.max(4, arrivals.length * 2);
+            criteria = Arrays.copyOf(criteria, capacity);
+            arrivals = Arrays.copyOf(arrivals, capacity);
+        }
+        int newSize = size - (k - write) + 1;
+        System.arraycopy(criteria, k, criteria, write + 1, size - k);
+        System.arraycopy(arrivals, k, arrivals, write + 1, size - k);
+        System.arraycopy(criteria, from, criteria, from + 1, write - from);
+        System.arraycopy(arrivals, from, arrivals, from + 1, write - from);
+        criteria[from] = crit;
+        arrivals[from] = tArr;
+        size = newSize;
+
+        return true;
+    }
+
+}
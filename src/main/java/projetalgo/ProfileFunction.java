@@ -1,56 +1,91 @@
 package projetalgo;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+
+/**
+ * Profile function of a stop for the multicriteria profile scan: the partial
+ * journeys leaving the stop, grouped in bags by departure time.
+ *
+ * The bags are stored by decreasing departure time, which is the order in which
+ * the backward connection scan finds them, so that creating a bag is usually an
+ * append. The partial journeys are stored in flat arrays (an arena), bag after
+ * bag: bag b holds the journeys [bagEnd[b - 1], bagEnd[b]). The criteria are
+ * packed by a CriteriaDescriptor, and appear at most once per bag.
+ *
+ * The (criteria, arrival time) labels of all the journeys that are not dominated
+ * by another one are also kept in a ParetoSet, so that a new journey leaving
+ * before all the others (the usual case) is checked against it instead of
+ * against every journey.
+ */
+public class ProfileFunction {
+    // returned by getFirstMatch if no journey matches (never a movement code, see
+    // MultiCritSolver)
+    public static final int NO_MOVEMENT = -1;
 
-import javafx.util.Pair;
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
 
-public class ProfileFunction {
-    // List<Pair<depatureTime, Map<CriteriaTracker --> Pair<arrivalTime,
-    // movement>>>>, sorted by decreasing depatureTime
-    private final List<Pair<Integer, Map<CriteriaTracker, Pair<Integer, Movement>>>> entries;
+    // bags, by decreasing departure time
+    private int[] departures = NO_INTS;
+    private int[] bagEnd = NO_INTS;
+    private int nBags = 0;
+
+    // partial journeys: criteria -> (arrival time, code of the next movement to
+    // take)
+    private long[] criteria = NO_LONGS;
+    private int[] arrivals = NO_INTS;
+    private int[] movements = NO_INTS;
+    private int size = 0;
+
+    private CriteriaDescriptor descriptor;
+
+    // labels of all the journeys above that are not dominated
+    private final ParetoSet front;
 
-    public ProfileFunction() {
-        this.entries = new ArrayList<>();
+    public ProfileFunction(CriteriaDescriptor descriptor) {
+        this.descriptor = descriptor;
+        this.front = new ParetoSet(descriptor);
     }
 
     /**
-     * Get the movement whose corresponding CriteriaTracker matches the given
-     * CriteriaTracker
-     * and whose departure time is as early as possible while being >= tDep.
+     * Empties the profile (keeping its arrays), which will hold journeys with
+     * the given criteria.
      */
-    public Movement getFirstMatch(int tDep, CriteriaTracker criteriaTracker) {
-        int firstReachableEntryIdx = getFirstReachableEntry(tDep);
+    void reset(CriteriaDescriptor descriptor) {
+        this.descriptor = descriptor;
+        size = 0;
+        nBags = 0;
+        front.reset(descriptor);
+    }
 
-        // no entry can be reached
-        if (firstReachableEntryIdx == -1) {
-            return null;
-        }
+    private int bagStart(int bag) {
+        return (bag == 0) ? 0 : bagEnd[bag - 1];
+    }
 
-        for (int i = firstReachableEntryIdx; i >= 0; i--) {
-            Map<CriteriaTracker, Pair<Integer, Movement>> map = entries.get(i).getValue();
-            if (map.containsKey(criteriaTracker)) {
-                Movement movement = map.get(criteriaTracker).getValue();
-                return movement;
+    /**
+     * Get the code of the movement whose criteria match the given criteria and
+     * whose departure time is as early as possible while being >= tDep,
+     * NO_MOVEMENT if there is none.
+     */
+    public int getFirstMatch(int tDep, long crit) {
+        for (int bag = getFirstReachableEntry(tDep); bag >= 0; bag--) {
+            for (int k = bagStart(bag); k < bagEnd[bag]; k++) {
+                if (criteria[k] == crit) {
+                    return movements[k];
+                }
             }
         }
 
-        return null;
+        return NO_MOVEMENT;
     }
 
     /**
-     * Returns the index of the first entry whose departure time is greater
-     * than or equal to tDep, entries.size() if no such entry.
+     * Returns the index of the last bag whose departure time is greater than or
+     * equal to tDep (the one leaving the earliest), -1 if no such bag.
      *
-     * NOTE: This could be done with a binary search, but in practice it would
-     * probably slow down the algorithm as we are always inserting near the
-     * front of the entries array. (Because entries are sorted by increasing
-     * departure time and we are scanning connections by decreasing departure
-     * time.) The only reason why it is not always exactly in the first bag is
-     * because of interstop footpaths:
+     * The bags are almost always all reachable, since the connections are scanned
+     * by decreasing departure time. The only reason why it is not always the case
+     * is because of interstop footpaths:
      *
      * Let X, Y, Z be three stops. Let c be a connection leaving Y at t1. Let d
      * be a connection leaving Z at t2. Let f be a footpath from Y to Z that can
@@ -65,173 +100,221 @@ public class ProfileFunction {
      * (again): adding partial journeys taking connection d (at t2).
      *
      * If t2 > t1 - fTravelTime, the journeys added in the previous step won't
-     * be added at the front of Z's profile entries but right after the bag that
-     * stores the journeys previously added when scanning f (near the front).
+     * be added in the last bag but right before it. Hence the binary search
+     * after checking the last bag.
      */
     private int getFirstReachableEntry(int tDep) {
-        for (int i = entries.size() - 1; i >= 0; i--) {
-            if (entries.get(i).getKey() >= tDep) {
-                return i;
+        if (nBags == 0 || departures[nBags - 1] >= tDep) {
+            return nBags - 1;
+        }
+
+        int i = 0;
+        int j = nBags - 1;
+        while (i < j) {
+            int mid = (i + j) >>> 1;
+            if (departures[mid] >= tDep) {
+                i = mid + 1;
+            } else {
+                j = mid;
+            }
+        }
+        return i - 1;
+    }
+
+    /**
+     * Returns true if one of the first reachableEnd journeys dominates (crit,
+     * tArr).
+     */
+    private boolean isDominated(int reachableEnd, long crit, int tArr) {
+        for (int k = 0; k < reachableEnd; k++) {
+            if (ParetoSet.dominates(descriptor, criteria[k], arrivals[k], crit, tArr)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        return -1; // no reachable entry found
+    /**
+     * Makes room for n partial journeys at position pos of the arena.
+     */
+    private void openGap(int pos, int n) {
+        if (size + n > arrivals.length) {
+            int capacity = Math.max(4, Math.max(size + n, arrivals.length * 2));
+            criteria = Arrays.copyOf(criteria, capacity);
+            arrivals = Arrays.copyOf(arrivals, capacity);
+            movements = Arrays.copyOf(movements, capacity);
+        }
+        if (pos < size) {
+            System.arraycopy(criteria, pos, criteria, pos + n, size - pos);
+            System.arraycopy(arrivals, pos, arrivals, pos + n, size - pos);
+            System.arraycopy(movements, pos, movements, pos + n, size - pos);
+        }
+        size += n;
+    }
+
+    /**
+     * Inserts an empty bag leaving at tDep at index bag.
+     */
+    private void insertBag(int bag, int tDep) {
+        if (nBags == departures.length) {
+            int capacity = Math.max(4, departures.length * 2);
+            departures = Arrays.copyOf(departures, capacity);
+            bagEnd = Arrays.copyOf(bagEnd, capacity);
+        }
+        System.arraycopy(departures, bag, departures, bag + 1, nBags - bag);
+        System.arraycopy(bagEnd, bag, bagEnd, bag + 1, nBags - bag);
+        departures[bag] = tDep;
+        bagEnd[bag] = bagStart(bag);
+        nBags++;
     }
 
     /**
      * Inserts new partial journeys departing at tDep.
      *
      * @param tDep               departure time (in seconds)
-     * @param newPartialJourneys a map from each CriteriaTracker to a Pair of
-     *                           (arrivalTime, movement), where arrival time is the
-     *                           arrival time at the destination and movement is the
-     *                           next connection/footpath to take if following
-     *                           that partial journey.
+     * @param newPartialJourneys the (criteria, arrivalTime, movement) labels of
+     *                           the journeys, with distinct criteria, where arrival
+     *                           time is the arrival time at the destination and
+     *                           movement is the code of the next connection/footpath
+     *                           to take if following that partial journey. The dominated ones
+     *                           are removed from the buffer.
      *
      * @return True if at least one newPartialJourneys has been inserted (meaning it
      *         wasn't dominated); false otherwise.
      */
-    public boolean insert(int tDep, Map<CriteriaTracker, Pair<Integer, Movement>> newPartialJourneys) {
-        // 1. find the index of the last entry (from the back) whose key is <= tDep
+    public boolean insert(int tDep, LabelBuffer newPartialJourneys) {
+        // 1. find the index of the last bag (the one leaving the earliest) leaving at
+        // or after tDep
         int firstReachableEntryIdx = getFirstReachableEntry(tDep);
+        int reachableEnd = (firstReachableEntryIdx == -1) ? 0 : bagEnd[firstReachableEntryIdx];
+        boolean allReachable = firstReachableEntryIdx == nBags - 1;
 
         // 2. filter dominated journeys in newPartialJourneys
-        Iterator<Map.Entry<CriteriaTracker, Pair<Integer, Movement>>> outerIt = newPartialJourneys.entrySet().iterator();
-
-        while (outerIt.hasNext()) {
-            Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entryCandidate = outerIt.next();
-            CriteriaTracker critCand = entryCandidate.getKey();
-            int tArrCand = entryCandidate.getValue().getKey();
-
-            boolean dominated = false;
+        int cand = 0;
+        while (cand < newPartialJourneys.size()) {
+            long critCand = newPartialJourneys.getCriteria(cand);
+            int tArrCand = newPartialJourneys.getArrival(cand);
 
             // 1) check domination by any other new journey
-            for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entryOther : newPartialJourneys.entrySet()) {
-                if (entryOther == entryCandidate) {
-                    continue;
-                }
-
-                CriteriaTracker critOther = entryOther.getKey();
-                int tArrOther = entryOther.getValue().getKey();
-
-                if ((critOther.dominates(critCand) && tArrOther <= tArrCand)
-                        || (critOther.equals(critCand) && tArrOther < tArrCand)) {
-                    dominated = true;
-                    break;
-                }
-            }
-            if (dominated) {
-                outerIt.remove();
-                continue;
+            boolean dominated = false;
+            for (int other = 0; other < newPartialJourneys.size() && !dominated; other++) {
+                dominated = other != cand && ParetoSet.dominates(descriptor, newPartialJourneys.getCriteria(other),
+                        newPartialJourneys.getArrival(other), critCand, tArrCand);
             }
 
-            // 2) check domination by any old journey
-            for (int i = 0; i <= firstReachableEntryIdx && !dominated; i++) {
-                for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entryOld : entries.get(i).getValue().entrySet()) {
-                    CriteriaTracker critOld = entryOld.getKey();
-                    int tArrOld = entryOld.getValue().getKey();
-
-                    if ((critOld.dominates(critCand) && tArrOld <= tArrCand) || (critOld.equals(critCand)
-                            && tArrOld < tArrCand)) {
-                        dominated = true;
-                        break;
-                    }
-                }
+            // 2) check domination by any old journey leaving at or after tDep (all of
+            // them, unless the bags leaving before tDep are not empty)
+            if (!dominated) {
+                dominated = allReachable ? front.isDominated(critCand, tArrCand)
+                        : isDominated(reachableEnd, critCand, tArrCand);
             }
+
             if (dominated) {
-                outerIt.remove();
+                newPartialJourneys.remove(cand);
+            } else {
+                cand++;
             }
         }
 
-        // 3. insert remaining non-dominated newPartialJourneys
+        int nNew = newPartialJourneys.size();
+        if (nNew == 0) {
+            return false;
+        }
+
+        // 3. insert remaining non-dominated newPartialJourneys, in the bag leaving at
+        // tDep (created if needed)
         int insertionIdx;
         boolean createNewBag;
-        if (firstReachableEntryIdx == -1) {
-            // create a new bag with tdep at the index 0
-            insertionIdx = 0;
-            createNewBag = true;
+        if (firstReachableEntryIdx != -1 && departures[firstReachableEntryIdx] == tDep) {
+            insertionIdx = firstReachableEntryIdx;
+            createNewBag = false;
         } else {
-            if (entries.get(firstReachableEntryIdx).getKey() == tDep) {
-                insertionIdx = firstReachableEntryIdx;
-                createNewBag = false;
-            } else {
-                insertionIdx = firstReachableEntryIdx + 1;
-                createNewBag = true;
+            insertionIdx = firstReachableEntryIdx + 1;
+            createNewBag = true;
+            insertBag(insertionIdx, tDep);
+        }
+
+        int start = bagStart(insertionIdx);
+        for (cand = 0; cand < nNew; cand++) {
+            long critCand = newPartialJourneys.getCriteria(cand);
+            int tArrCand = newPartialJourneys.getArrival(cand);
+
+            int k = start;
+            while (k < bagEnd[insertionIdx] && criteria[k] != critCand) {
+                k++;
+            }
+            if (k == bagEnd[insertionIdx]) {
+                openGap(k, 1);
+                for (int bag = insertionIdx; bag < nBags; bag++) {
+                    bagEnd[bag]++;
+                }
+                criteria[k] = critCand;
             }
+            arrivals[k] = tArrCand;
+            movements[k] = newPartialJourneys.getMovement(cand);
+
+            // (the labels it dominates leave the front, along with the journeys removed
+            // below)
+            front.add(critCand, tArrCand);
         }
 
-        if (createNewBag) {
-            // create a new map at insertionIdx with remaining newPartialJourneys entries
-            entries.add(insertionIdx,
-                    new Pair<>(tDep, newPartialJourneys));
-        } else {
-            // add remaining newPartialJourneys entries to the map at insertionIdx
-            entries.get(insertionIdx).getValue().putAll(newPartialJourneys);
+        // a new last bag only holds the new journeys
+        if (createNewBag && insertionIdx == nBags - 1) {
+            return true;
         }
 
         // 4. remove partialJourneys that leave at/after tDep and that are now dominated
-        // by the remaining newPartialJourneys
-        for (int i = insertionIdx; i < entries.size(); i++) {
-            Pair<Integer, Map<CriteriaTracker, Pair<Integer, Movement>>> entry = entries.get(i);
-
-            Map<CriteriaTracker, Pair<Integer, Movement>> existingJourneys = entry.getValue();
-            Iterator<Map.Entry<CriteriaTracker, Pair<Integer, Movement>>> it = existingJourneys.entrySet().iterator();
-
-            while (it.hasNext()) {
-                Map.Entry<CriteriaTracker, Pair<Integer, Movement>> oldEntry = it.next();
-                CriteriaTracker oldCriteria = oldEntry.getKey();
-                int oldTArr = oldEntry.getValue().getKey();
-
-                // check if this old journey is now dominated by any new one
-                for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> newEntry : newPartialJourneys.entrySet()) {
-                    CriteriaTracker newCriteria = newEntry.getKey();
-                    int newTArr = newEntry.getValue().getKey();
-
-                    if ((newCriteria.dominates(oldCriteria) && newTArr <= oldTArr)
-                            || (newCriteria.equals(oldCriteria) &&
-                                    newTArr < oldTArr)) {
-                        it.remove();
-                        break;
-                    }
+        // by the remaining newPartialJourneys (the new ones never dominate each other)
+        int write = start;
+        int read = start;
+        int bagWrite = insertionIdx;
+        for (int bag = insertionIdx; bag < nBags; bag++) {
+            for (; read < bagEnd[bag]; read++) {
+                boolean isDominated = false;
+                for (cand = 0; cand < nNew && !isDominated; cand++) {
+                    isDominated = ParetoSet.dominates(descriptor, newPartialJourneys.getCriteria(cand),
+                            newPartialJourneys.getArrival(cand), criteria[read], arrivals[read]);
+                }
+                if (!isDominated) {
+                    criteria[write] = criteria[read];
+                    arrivals[write] = arrivals[read];
+                    movements[write] = movements[read];
+                    write++;
                 }
             }
+
+            // the bags left empty are dropped
+            if (write > bagStart(bagWrite)) {
+                departures[bagWrite] = departures[bag];
+                bagEnd[bagWrite] = write;
+                bagWrite++;
+            }
         }
+        size = write;
+        nBags = bagWrite;
 
-        return !newPartialJourneys.isEmpty();
+        return true;
     }
 
     /**
      * Evaluates the profile function at a given time.
      *
      * For a given departure time tDep, scans all entries leaving at or after tDep.
-     * For each CriteriaTracker, keeps the movement with the best (earliest) arrival
-     * time. Returns a map from CriteriaTracker to its best (arrivalTime, movement)
-     * pair.
+     * For each criteria, keeps the movement with the best (earliest) arrival time.
+     * The (criteria, arrivalTime, movement) labels are written to ret (cleared
+     * first).
      */
-    public Map<CriteriaTracker, Pair<Integer, Movement>> evaluateAt(int tDep) {
-        Map<CriteriaTracker, Pair<Integer, Movement>> ret = new HashMap<>();
-
-        // all the entries that leave at/after tdep
-        for (int i = 0; i <= getFirstReachableEntry(tDep); i++) {
-            for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> entry : entries.get(i).getValue().entrySet()) {
-                // if multiple times the same CriteriaTracker, put at that CriteriaTracker key
-                // the pair<arrivalTime, Movement> that has the earliest arrivalTime
-                Pair<Integer, Movement> pairCurrentlyAtKey = ret.get(entry.getKey());
-                if (pairCurrentlyAtKey == null) {
-                    ret.put(entry.getKey(), entry.getValue());
-                } else { // there is already sth for that CriteriaTracker -> update only if it improves
-                         // TArr
-                    int entryTArr = entry.getValue().getKey();
-                    int pairCurrentlyAtKeyTArr = pairCurrentlyAtKey.getKey();
-
-                    if (entryTArr < pairCurrentlyAtKeyTArr) {
-                        ret.put(entry.getKey(), entry.getValue());
-                    }
-                }
-            }
-        }
+    public void evaluateAt(int tDep, LabelBuffer ret) {
+        ret.clear();
 
-        return ret;
+        // all the entries that leave at/after tdep (they come first)
+        int firstReachableEntryIdx = getFirstReachableEntry(tDep);
+        int reachableEnd = (firstReachableEntryIdx == -1) ? 0 : bagEnd[firstReachableEntryIdx];
+        for (int k = 0; k < reachableEnd; k++) {
+            // if multiple times the same criteria, keep the label that has the earliest
+            // arrivalTime
+            ret.improve(criteria[k], arrivals[k], movements[k]);
+        }
     }
 
     @Override
@@ -239,23 +322,13 @@ public class ProfileFunction {
         StringBuilder sb = new StringBuilder();
         sb.append("ProfileFunction:\n");
 
-        for (int i = entries.size() - 1; i >= 0; i--) {
-            Pair<Integer, Map<CriteriaTracker, Pair<Integer, Movement>>> entry = entries.get(i);
-
-            int departureTime = entry.getKey();
-            Map<CriteriaTracker, Pair<Integer, Movement>> criteriaMap = entry.getValue();
-
-            sb.append("  Departure Time: ").append(TimeConversion.fromSeconds(departureTime)).append("\n");
-
-            for (Map.Entry<CriteriaTracker, Pair<Integer, Movement>> mapEntry : criteriaMap.entrySet()) {
-                CriteriaTracker criteria = mapEntry.getKey();
-                Pair<Integer, Movement> value = mapEntry.getValue();
-                int arrivalTime = value.getKey();
-                Movement movement = value.getValue();
+        for (int bag = nBags - 1; bag >= 0; bag--) {
+            sb.append("  Departure Time: ").append(TimeConversion.fromSeconds(departures[bag])).append("\n");
 
-                sb.append("    Criteria: ").append(criteria.toString()).append("\n");
-                sb.append("      Arrival Time: ").append(TimeConversion.fromSeconds(arrivalTime)).append("\n");
-                sb.append("      Movement: ").append((movement != null) ? movement.toString() : "null").append("\n");
+            for (int k = bagStart(bag); k < bagEnd[bag]; k++) {
+                sb.append("    Criteria: ").append(descriptor.format(criteria[k])).append("\n");
+                sb.append("      Arrival Time: ").append(TimeConversion.fromSeconds(arrivals[k])).append("\n");
+                sb.append("      Movement: ").append(movements[k]).append("\n");
             }
         }
 
@@ -0,0 +1,61 @@
+package projetalgo;
+
+import java.util.Arrays;
+
+/**
+ * Profile functions of the stops (by index) for the queries of a
+ * MultiCritSolver.
+ *
+ * A profile function is only created when its stop is first reached, and is
+ * then kept for the next queries: starting a query only bumps an epoch, and
+ * the profiles stamped with an older epoch are reset when reached again. Thus
+ * the cost of a query is proportional to the stops it reaches, not to the
+ * size of the network.
+ */
+class ProfileFunctionPool {
+    private final ProfileFunction[] profiles;
+    private final int[] stamp;
+    private int epoch = 0;
+    private CriteriaDescriptor descriptor;
+
+    ProfileFunctionPool(int nStops) {
+        this.profiles = new ProfileFunction[nStops];
+        this.stamp = new int[nStops];
+    }
+
+    /**
+     * Empties all the profiles, which will hold journeys with the given
+     * criteria.
+     */
+    void clear(CriteriaDescriptor descriptor) {
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Returns the profile of the stop, null if it is empty (not reached yet).
+     */
+    ProfileFunction get(int stopIdx) {
+        return (stamp[stopIdx] == epoch) ? profiles[stopIdx] : null;
+    }
+
+    /**
+     * Returns the profile of the stop, to insert journeys in it.
+     */
+    ProfileFunction reach(int stopIdx) {
+        if (stamp[stopIdx] != epoch) {
+            stamp[stopIdx] = epoch;
+            if (profiles[stopIdx] == null) {
+                profiles[stopIdx] = new ProfileFunction(descriptor);
+            } else {
+                profiles[stopIdx].reset(descriptor);
+            }
+        }
+        return profiles[stopIdx];
+    }
+
+}
@@ -0,0 +1,148 @@
+package projetalgo;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Mutable state of a query of Solver or MultiCritSolver, in arrays indexed by
+ * stop and by trip index and allocated once for the timetable.
+ *
+ * The labels are only valid if their stamp equals the current epoch, so that a
+ * workspace never has to be cleared or reallocated between two queries. The
+ * profiles are kept between queries and invalidated the same way.
+ *
+ * A query borrows a workspace from the Pool of its solver and gives it back
+ * when closed, so that the solvers keep no state of their own: the timetable
+ * can be shared by concurrent queries, and the arrays are only allocated for
+ * the queries running at the same time.
+ */
+class QueryWorkspace implements AutoCloseable {
+    private final Pool pool;
+
+    // Labels of the earliest arrival scan, indexed by Stop.getIndex(): the
+    // earliest arrival time and the movement to get there (see Solver).
+    final int[] earliestArrival;
+    final int[] parentMovement;
+    final int[] stamp;
+    int epoch = 0;
+
+    // Per-trip labels indexed by trip index, valid if tripStamp equals epoch: the
+    // trip is reached (we can be sitting in it) and boardingConnection is the
+    // connection we board it with.
+    final int[] boardingConnection;
+    final int[] tripStamp;
+
+    // Labels of the profile queries of Solver: the arrival time at the target
+    // and the connection to alight from when sitting in a trip (valid if
+    // tripStamp equals epoch), the duration of the walk from each stop to the
+    // target (-1 if it is too far, reset after each query) and the profiles of
+    // the stops.
+    final int[] tripArrival;
+    final int[] tripExit;
+    final int[] finalWalkDuration;
+    private StopProfiles stopProfiles; // allocated on the first profile query
+
+    // State of the multicriteria queries: the scratch label buffers of the scan,
+    // the incoming edge of the target (in FootpathGraph) of the footpath from
+    // each stop to the target (-1 if it is too far, reset after each query) and
+    // the profile functions of the stops.
+    final LabelBuffer tauC = new LabelBuffer();
+    final LabelBuffer evaluated = new LabelBuffer();
+    final LabelBuffer walked = new LabelBuffer();
+    final int[] finalFootpathEdge;
+    private ProfileFunctionPool profileFunctions; // allocated on the first multicriteria query
+
+    private QueryWorkspace(Pool pool) {
+        this.pool = pool;
+
+        this.earliestArrival = new int[pool.nStops];
+        this.parentMovement = new int[pool.nStops];
+        this.stamp = new int[pool.nStops];
+        this.boardingConnection = new int[pool.nTrips];
+        this.tripStamp = new int[pool.nTrips];
+        this.tripArrival = new int[pool.nTrips];
+        this.tripExit = new int[pool.nTrips];
+        this.finalWalkDuration = new int[pool.nStops];
+        Arrays.fill(finalWalkDuration, -1);
+        this.finalFootpathEdge = new int[pool.nStops];
+        Arrays.fill(finalFootpathEdge, -1);
+    }
+
+    /**
+     * Invalidates all the labels of the previous query.
+     */
+    void nextEpoch() {
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(tripStamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+    }
+
+    /**
+     * Returns the earliest known arrival time at the given stop, or
+     * Integer.MAX_VALUE if unknown.
+     */
+    int getBestKnownArrivalTime(int stopIdx) {
+        return (stamp[stopIdx] == epoch) ? earliestArrival[stopIdx] : Integer.MAX_VALUE;
+    }
+
+    void setBestKnown(int stopIdx, int tArr, int movement) {
+        stamp[stopIdx] = epoch;
+        earliestArrival[stopIdx] = tArr;
+        parentMovement[stopIdx] = movement;
+    }
+
+    StopProfiles getStopProfiles() {
+        if (stopProfiles == null) {
+            stopProfiles = new StopProfiles(pool.nStops);
+        }
+        return stopProfiles;
+    }
+
+    ProfileFunctionPool getProfileFunctions() {
+        if (profileFunctions == null) {
+            profileFunctions = new ProfileFunctionPool(pool.nStops);
+        }
+        return profileFunctions;
+    }
+
+    /**
+     * Gives the workspace back to its pool: it must not be used anymore.
+     */
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    /**
+     * Workspaces of the queries of a solver. The idle ones are kept for the next
+     * queries, up to one per processor (the others are left to the garbage
+     * collector).
+     */
+    static class Pool {
+        private final int nStops;
+        private final int nTrips;
+        private final ArrayBlockingQueue<QueryWorkspace> idle;
+
+        Pool(Data data) {
+            this.nStops = data.stops.length;
+            this.nTrips = data.connections.tripIds.length;
+            this.idle = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Returns an idle workspace, or a new one if they are all in use.
+         */
+        QueryWorkspace acquire() {
+            QueryWorkspace workspace = idle.poll();
+            return (workspace != null) ? workspace : new QueryWorkspace(this);
+        }
+
+        private void release(QueryWorkspace workspace) {
+            idle.offer(workspace);
+        }
+    }
+
+}
@@ -0,0 +1,443 @@
+package projetalgo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers earliest arrival and multicriteria queries over HTTP, with the HTTP
+ * server of the JDK and one virtual thread per request. All the requests share
+ * the same Data and solvers (each query borrowing its own workspace), and at
+ * most one query per processor is solved at a time: the other requests wait
+ * for their turn without holding a platform thread. The results are kept in a
+ * JourneyCache, so that the repeated queries are not solved again.
+ *
+ * The endpoints answer GET requests with JSON:
+ *
+ * GET /earliest?from=ID&to=ID&departure=HH:MM:SS
+ * GET /multicriteria?from=ID&to=ID&departure=HH:MM:SS[&criteria=footpaths|trams]
+ * GET /stops?name=TEXT[&limit=N]
+ * GET /health
+ *
+ * The earliest arrival queries accept several origins and destinations, as
+ * repeated parameters or as ids separated by '|'. The stops endpoint gives the
+ * stops with the given name, the names starting with it and, if no stop has
+ * this name, the names close to it (see StopNameIndex). The health endpoint gives
+ * the size of the timetable, the counts and latencies of the requests of each
+ * endpoint and the hits and misses of the cache.
+ */
+public class RoutingServer {
+    // pending connections accepted by the system before the server handles them
+    private static final int BACKLOG = 4096;
+    private static final long CACHE_SIZE = 100_000;
+    private static final int CACHE_BUCKET_SECONDS = 5 * 60;
+    private static final int DEFAULT_STOPS_LIMIT = 10;
+    private static final int MAX_STOPS_LIMIT = 100;
+
+    private final Data data;
+    private final Data multiCritData;
+    private final Solver solver;
+    private final MultiCritSolver multiCritSolver;
+    private final JourneyCache cache = new JourneyCache(CACHE_SIZE, CACHE_BUCKET_SECONDS);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxSolving = Runtime.getRuntime().availableProcessors();
+    private final Semaphore solving = new Semaphore(maxSolving);
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final EndpointStats earliestStats = new EndpointStats();
+    private final EndpointStats multiCritStats = new EndpointStats();
+    private final EndpointStats stopsStats = new EndpointStats();
+    private final EndpointStats healthStats = new EndpointStats();
+
+    /**
+     * Thrown by the endpoints to answer with an error status and message.
+     */
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        /**
+         * Returns the JSON body of the answer to the request with the given
+         * parameters.
+         */
+        String respond(Map<String, List<String>> parameters);
+    }
+
+    /**
+     * Counts and latencies of the requests of an endpoint, updated by the
+     * concurrent requests without locking.
+     */
+    private static class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        void add(long nanos, boolean error) {
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void appendJson(StringBuilder json) {
+            long n = requests.sum();
+            json.append("{\"requests\":").append(n);
+            json.append(",\"errors\":").append(errors.sum());
+            json.append(",\"mean_latency_ms\":")
+                    .append(String.format(Locale.ROOT, "%.3f", (n == 0) ? 0.0 : totalNanos.sum() / 1_000_000.0 / n));
+            json.append(",\"max_latency_ms\":")
+                    .append(String.format(Locale.ROOT, "%.3f", maxNanos.get() / 1_000_000.0));
+            json.append('}');
+        }
+    }
+
+    /**
+     * Binds the server to the given address (port 0 for any free port), without
+     * starting it.
+     *
+     * @param data             the data of the earliest arrival queries
+     * @param multiCritData    the data of the multicriteria queries
+     * @param multiCritHorizon the horizon of the multicriteria queries
+     */
+    public RoutingServer(Data data, Data multiCritData, SearchHorizon multiCritHorizon, InetSocketAddress address)
+            throws IOException {
+        this.data = data;
+        this.multiCritData = multiCritData;
+        this.solver = new Solver(data);
+        this.multiCritSolver = new MultiCritSolver(multiCritData);
+        multiCritSolver.setHorizon(multiCritHorizon);
+
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/earliest", exchange -> handle(exchange, "/earliest", earliestStats, this::earliest));
+        server.createContext("/multicriteria",
+                exchange -> handle(exchange, "/multicriteria", multiCritStats, this::multiCrit));
+        server.createContext("/stops", exchange -> handle(exchange, "/stops", stopsStats, this::stops));
+        server.createContext("/health", exchange -> handle(exchange, "/health", healthStats, parameters -> health()));
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                send(exchange, 404, error("no such endpoint: " + exchange.getRequestURI().getPath()));
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits at most delaySeconds for the running
+     * ones to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // -----------------------------------------------------
+    // Requests
+    // -----------------------------------------------------
+
+    private void handle(HttpExchange exchange, String path, EndpointStats stats, Endpoint endpoint) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        int status = 200;
+        String body;
+        try {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                throw new HttpError(404, "no such endpoint: " + exchange.getRequestURI().getPath());
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                throw new HttpError(405, "method not allowed: " + exchange.getRequestMethod());
+            }
+            body = endpoint.respond(parseParameters(exchange.getRequestURI().getRawQuery()));
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        try (exchange) {
+            send(exchange, status, body);
+        } catch (IOException e) {
+            // the client is gone, there is no one left to answer
+        } finally {
+            inFlight.decrementAndGet();
+            stats.add(System.nanoTime() - start, status != 200);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        JourneyWriter.appendJsonString(json, message);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Returns the values of each parameter of the query string, in order.
+     */
+    private static Map<String, List<String>> parseParameters(String rawQuery) {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode((eq == -1) ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = (eq == -1) ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+            } catch (IllegalArgumentException e) {
+                throw new HttpError(400, "invalid query string: " + e.getMessage());
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the stop ids of the parameter (repeated or separated by '|'),
+     * checking that they all exist in the given data.
+     */
+    private static List<String> stopIds(Map<String, List<String>> parameters, String name, Data data) {
+        List<String> ids = new ArrayList<>();
+        for (String value : parameters.getOrDefault(name, List.of())) {
+            for (String id : value.split("\\|")) {
+                if (!id.isBlank()) {
+                    ids.add(id.strip());
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new HttpError(400, "missing parameter '" + name + "'");
+        }
+        for (String id : ids) {
+            if (!data.stopIdToStop.containsKey(id)) {
+                throw new HttpError(400, "unknown stop '" + id + "'");
+            }
+        }
+        return ids;
+    }
+
+    private static int departure(Map<String, List<String>> parameters) {
+        List<String> values = parameters.get("departure");
+        if (values == null || values.size() != 1) {
+            throw new HttpError(400, "expected one parameter 'departure'");
+        }
+        int tDep = TimeConversion.toSeconds(values.get(0).strip());
+        if (tDep == -1) {
+            throw new HttpError(400, "invalid departure time, expected HH:MM:SS");
+        }
+        return tDep;
+    }
+
+    private static CriteriaDescriptor criteriaDescriptor(Map<String, List<String>> parameters) {
+        List<String> values = parameters.getOrDefault("criteria", List.of("footpaths"));
+        String criteria = (values.size() == 1) ? values.get(0).strip().toLowerCase() : "";
+        return switch (criteria) {
+            case "footpaths" -> CriteriaDescriptor.footpathsCount();
+            case "trams" -> CriteriaDescriptor.tramsCount();
+            default -> throw new HttpError(400, "unknown criteria '" + String.join(",", values) + "'");
+        };
+    }
+
+    // -----------------------------------------------------
+    // Endpoints
+    // -----------------------------------------------------
+
+    /**
+     * Runs the query once one of the solving permits is free.
+     */
+    private <T> T solve(Supplier<T> query) {
+        solving.acquireUninterruptibly();
+        try {
+            return query.get();
+        } finally {
+            solving.release();
+        }
+    }
+
+    private String earliest(Map<String, List<String>> parameters) {
+        List<String> pDepIds = stopIds(parameters, "from", data);
+        List<String> pArrIds = stopIds(parameters, "to", data);
+        int tDep = departure(parameters);
+
+        Optional<Journey> journey = cache.getEarliestArrival(pDepIds, pArrIds, tDep,
+                () -> solve(() -> solver.solve(pDepIds, pArrIds, tDep)));
+
+        StringBuilder json = new StringBuilder(1024);
+        if (journey.isEmpty()) {
+            return json.append("{\"status\":\"unreachable\"}").toString();
+        }
+        json.append("{\"status\":\"ok\",\"journey\":{");
+        JourneyWriter.appendJourneyFields(json, journey.get());
+        return json.append("}}").toString();
+    }
+
+    private String multiCrit(Map<String, List<String>> parameters) {
+        List<String> pDepIds = stopIds(parameters, "from", multiCritData);
+        List<String> pArrIds = stopIds(parameters, "to", multiCritData);
+        if (pDepIds.size() != 1 || pArrIds.size() != 1) {
+            throw new HttpError(400, "the multicriteria solver takes one origin and one destination");
+        }
+        int tDep = departure(parameters);
+        CriteriaDescriptor descriptor = criteriaDescriptor(parameters);
+
+        List<MultiCritJourney> journeys;
+        if (pDepIds.get(0).equals(pArrIds.get(0))) {
+            journeys = List.of(new MultiCritJourney(descriptor, descriptor.empty(), new Journey(tDep, tDep, List.of())));
+        } else {
+            journeys = cache.getMultiCrit(descriptor, pDepIds.get(0), pArrIds.get(0), tDep,
+                    () -> solve(() -> multiCritSolver.solve(descriptor, pDepIds.get(0), pArrIds.get(0), tDep)));
+        }
+
+        StringBuilder json = new StringBuilder(1024 * (1 + journeys.size()));
+        json.append("{\"status\":\"").append(journeys.isEmpty() ? "unreachable" : "ok").append("\",\"journeys\":[");
+        for (int i = 0; i < journeys.size(); i++) {
+            MultiCritJourney journey = journeys.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"criteria\":");
+            JourneyWriter.appendJsonString(json, descriptor.format(journey.getCriteria()));
+            json.append(',');
+            JourneyWriter.appendJourneyFields(json, journey.getJourney());
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String stops(Map<String, List<String>> parameters) {
+        List<String> values = parameters.get("name");
+        if (values == null || values.size() != 1 || values.get(0).isBlank()) {
+            throw new HttpError(400, "expected one parameter 'name'");
+        }
+        String name = values.get(0);
+        int limit = DEFAULT_STOPS_LIMIT;
+        if (parameters.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(parameters.get("limit").get(0).strip());
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > MAX_STOPS_LIMIT) {
+                throw new HttpError(400, "the limit must be between 1 and " + MAX_STOPS_LIMIT);
+            }
+        }
+
+        StopNameIndex stopNames = solver.getStopNames();
+        List<Stop> stops = stopNames.stopsWithName(name);
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"stops\":[");
+        for (int i = 0; i < stops.size() && i < limit; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":");
+            JourneyWriter.appendJsonString(json, stops.get(i).getId());
+            json.append(",\"name\":");
+            JourneyWriter.appendJsonString(json, stops.get(i).getName());
+            json.append(",\"operator\":");
+            JourneyWriter.appendJsonString(json, stops.get(i).getTransportOperatorStop());
+            json.append('}');
+        }
+        json.append("],\"completions\":");
+        appendJsonStrings(json, stopNames.namesStartingWith(name, limit));
+        json.append(",\"suggestions\":");
+        appendJsonStrings(json, stops.isEmpty() ? stopNames.closestNames(name, limit) : List.of());
+        return json.append('}').toString();
+    }
+
+    private static void appendJsonStrings(StringBuilder json, List<String> strings) {
+        json.append('[');
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            JourneyWriter.appendJsonString(json, strings.get(i));
+        }
+        json.append(']');
+    }
+
+    private String health() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"status\":\"ok\"");
+        json.append(",\"uptime_s\":").append((System.nanoTime() - startNanos) / 1_000_000_000L);
+        json.append(",\"stops\":").append(data.stops.length);
+        json.append(",\"connections\":").append(data.connections.size());
+        json.append(",\"multicriteria_stops\":").append(multiCritData.stops.length);
+        json.append(",\"in_flight\":").append(inFlight.get());
+        json.append(",\"solving\":").append(maxSolving - solving.availablePermits());
+        json.append(",\"endpoints\":{\"earliest\":");
+        earliestStats.appendJson(json);
+        json.append(",\"multicriteria\":");
+        multiCritStats.appendJson(json);
+        json.append(",\"stops\":");
+        stopsStats.appendJson(json);
+        json.append(",\"health\":");
+        healthStats.appendJson(json);
+        JourneyCache.Stats cacheStats = cache.getStats();
+        json.append("},\"cache\":{\"hits\":").append(cacheStats.getHitsCount());
+        json.append(",\"misses\":").append(cacheStats.getMissesCount());
+        json.append(",\"hit_rate\":").append(String.format(Locale.ROOT, "%.3f", cacheStats.getHitRate()));
+        json.append(",\"evictions\":").append(cacheStats.getEvictionsCount());
+        json.append(",\"size\":").append(cacheStats.getSize());
+        return json.append("}}").toString();
+    }
+
+}
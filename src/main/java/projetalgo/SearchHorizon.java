@@ -0,0 +1,104 @@
+package projetalgo;
+
+/**
+ * Latest arrival time considered by a MultiCritSolver query: the journeys
+ * arriving later are not searched, so that the backward scan starts from the
+ * last relevant connection instead of the end of the day.
+ *
+ * The horizon is either unbounded, a fixed arrival time, a maximum journey
+ * duration, or the earliest arrival time (found by a quick earliest arrival
+ * scan) plus some slack.
+ */
+public class SearchHorizon {
+    private enum Kind {
+        NONE,
+        MAX_ARRIVAL,
+        MAX_DURATION,
+        EARLIEST_ARRIVAL_PLUS
+    }
+
+    private static final SearchHorizon NONE = new SearchHorizon(Kind.NONE, 0);
+
+    private final Kind kind;
+    private final int value; // in seconds, meaning depends on kind
+
+    private SearchHorizon(Kind kind, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("The horizon must not be negative: " + value);
+        }
+        this.kind = kind;
+        this.value = value;
+    }
+
+    /**
+     * All the journeys are searched, whatever their arrival time.
+     */
+    public static SearchHorizon none() {
+        return NONE;
+    }
+
+    /**
+     * Only the journeys arriving at or before tArrMax are searched.
+     */
+    public static SearchHorizon maxArrival(int tArrMax) {
+        return new SearchHorizon(Kind.MAX_ARRIVAL, tArrMax);
+    }
+
+    /**
+     * Only the journeys lasting at most maxDuration seconds are searched.
+     */
+    public static SearchHorizon maxDuration(int maxDuration) {
+        return new SearchHorizon(Kind.MAX_DURATION, maxDuration);
+    }
+
+    /**
+     * Only the journeys arriving at most slack seconds after the earliest
+     * arrival time are searched. If the target cannot be reached by the earliest
+     * arrival scan, all the journeys are searched.
+     */
+    public static SearchHorizon earliestArrivalPlus(int slack) {
+        return new SearchHorizon(Kind.EARLIEST_ARRIVAL_PLUS, slack);
+    }
+
+    /**
+     * Returns true if getTArrMax needs the earliest arrival time.
+     */
+    boolean needsEarliestArrival() {
+        return kind == Kind.EARLIEST_ARRIVAL_PLUS;
+    }
+
+    /**
+     * Returns the latest arrival time to search, Integer.MAX_VALUE for no
+     * limit.
+     *
+     * @param tDep         the departure time of the query
+     * @param tArrEarliest the earliest arrival time of the query
+     *                     (Solver.UNREACHABLE if unknown or unreachable), only
+     *                     used if needsEarliestArrival
+     */
+    int getTArrMax(int tDep, int tArrEarliest) {
+        return switch (kind) {
+            case NONE -> Integer.MAX_VALUE;
+            case MAX_ARRIVAL -> value;
+            case MAX_DURATION -> saturatedAdd(tDep, value);
+            case EARLIEST_ARRIVAL_PLUS -> (tArrEarliest == Solver.UNREACHABLE) ? Integer.MAX_VALUE
+                    : saturatedAdd(tArrEarliest, value);
+        };
+    }
+
+    private static int saturatedAdd(int a, int b) {
+        long sum = (long) a + b;
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case NONE -> "no horizon";
+            case MAX_ARRIVAL -> "arrival by " + TimeConversion.fromSeconds(value);
+            case MAX_DURATION -> "duration of at most " + TimeConversion.formatDuration(value);
+            case EARLIEST_ARRIVAL_PLUS -> "earliest arrival plus " + TimeConversion.formatDuration(value);
+        };
+    }
+
+}
@@ -1,182 +1,105 @@
 package projetalgo;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Optional;
 
 public class Solver extends AbstractSolver {
-    private final HashMap<String, List<Footpath>> stopIdToOutgoingFootpaths;
+    private final FootpathGraph footpaths;
+
+    // Movement codes stored in QueryWorkspace.parentMovement (and by
+    // MultiQuerySolver): the index of the connection we alight from (>= 0), or a
+    // footpath encoded from its departure stop index, or NO_MOVEMENT for the
+    // departure stops.
+    static final int NO_MOVEMENT = -1;
+
+    // Arrival time of the stops that cannot be reached, in solveOneToAll.
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Mutable state of the queries, borrowed for each of them (the solver can
+    // answer concurrent queries).
+    private final QueryWorkspace.Pool workspaces;
 
     public Solver(Data data) {
         super(data);
 
-        double maxFootpathDistKm = 0.5;
-        this.stopIdToOutgoingFootpaths = new HashMap<>();
-        genFootpaths(maxFootpathDistKm);
+        this.footpaths = data.footpaths;
+        this.workspaces = new QueryWorkspace.Pool(data);
     }
 
-    /**
-     * Returns the earliest known arrival time at stopId, or Integer.MAX_VALUE if
-     * unknown.
-     */
-    private static int getBestKnownArrivalTime(Map<String, BestKnownEntry> bestKnown, String stopId) {
-        BestKnownEntry entry = bestKnown.get(stopId);
-        return (entry != null) ? entry.getTArr() : Integer.MAX_VALUE;
+    static int footpathMovement(int footpathPDepIdx) {
+        return -2 - footpathPDepIdx;
+    }
+
+    static int footpathPDepIdx(int movement) {
+        return -2 - movement;
     }
 
     /**
-     * Returns the stopId of the arrival stop we arrive at earliest.
+     * Returns the index of the arrival stop we arrive at earliest, -1 if none of
+     * them can be reached.
      */
-    private static String findPArrIdEarliest(Map<String, BestKnownEntry> bestKnown, List<String> pArrIds) {
+    private static int findPArrIdxEarliest(QueryWorkspace ws, int[] pArrIdxs) {
         int tArrEarliest = Integer.MAX_VALUE;
-        String pArrIdEarliest = null;
+        int pArrIdxEarliest = -1;
 
-        for (String pArrId : pArrIds) {
-            int tArr = getBestKnownArrivalTime(bestKnown, pArrId);
+        for (int pArrIdx : pArrIdxs) {
+            int tArr = ws.getBestKnownArrivalTime(pArrIdx);
 
             if (tArr < tArrEarliest) {
-                pArrIdEarliest = pArrId;
+                pArrIdxEarliest = pArrIdx;
                 tArrEarliest = tArr;
             }
         }
 
-        return pArrIdEarliest;
+        return pArrIdxEarliest;
     }
 
     /**
-     * Reconstructs and prints the path from the earliest arrival stop back to a
-     * departure stop.
+     * Reconstructs the journey leaving at tDep from a departure stop to the
+     * earliest arrival stop.
      *
-     * Traverses the path backwards using the best known entries, storing movements
-     * in a stack to reverse the order. Then replays the path forward from the
-     * departure.
+     * Traverses the path backwards using the parent movements, then reverses the
+     * legs.
+     *
+     * Each trip taken gives a single TripLeg, from the stop where it was boarded
+     * to the stop where we alight.
      */
-    Stack<BestKnownEntry> reconstructSolution(Map<String, BestKnownEntry> bestKnown, List<String> pDepIds,
-            String pArrIdEarliest) {
+    Journey reconstructSolution(QueryWorkspace ws, int pArrIdxEarliest, int tDep) {
         // Reconstruct the solution backwards (from pArr to one of pDeps)
-        Stack<BestKnownEntry> finalPath = new Stack<>();
-        String currentStopId = pArrIdEarliest;
-        while (!pDepIds.contains(currentStopId)) {
-            BestKnownEntry currentEntry = bestKnown.get(currentStopId);
-            if (currentEntry == null) {
-                throw new IllegalStateException("No path found to a departure stop from: " + currentStopId);
+        List<Leg> legs = new ArrayList<>();
+        int currentStopIdx = pArrIdxEarliest;
+        while (ws.parentMovement[currentStopIdx] != NO_MOVEMENT) {
+            if (ws.stamp[currentStopIdx] != ws.epoch) {
+                throw new IllegalStateException(
+                        "No path found to a departure stop from: " + stops[currentStopIdx].getId());
             }
 
-            finalPath.push(currentEntry);
-
-            currentStopId = currentEntry.getMovement()
-                    .getPDep().getId();
-        }
-
-        return finalPath;
-    }
-
-    /**
-     * Displays instructions for completing the journey.
-     */
-    private void printInstructions(Stack<BestKnownEntry> finalPath) {
-        String currentTripId = null;
-        RouteInfo currentRouteInfo = null;
-        Stop tripStartStop = null;
-        Stop previousStop = null;
-        int departureTime = -1;
-        int arrivalTime = -1;
-
-        while (!finalPath.isEmpty()) {
-            BestKnownEntry entry = finalPath.pop();
-            Movement movement = entry.getMovement();
-            Stop pDep = movement.getPDep();
-            Stop pArr = movement.getPArr();
-
-            switch (movement) {
-                case Footpath footpath -> {
-                    if (currentTripId != null) {
-                        if (tripStartStop != null && previousStop != null && currentRouteInfo != null) {
-                            String depTimeStr = TimeConversion.fromSeconds(departureTime);
-                            String arrTimeStr = TimeConversion.fromSeconds(arrivalTime);
-                            System.out.println(
-                                "Take " + AinsiCode.BOLD + AinsiCode.RED + currentRouteInfo.toString() + AinsiCode.RESET + " from "
-                                + AinsiCode.BOLD + AinsiCode.RED + tripStartStop.getName() + AinsiCode.RESET + " at " + AinsiCode.BOLD + 
-                                AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to " + AinsiCode.BOLD + AinsiCode.RED + 
-                                previousStop.getName() + AinsiCode.RESET + " (" + arrTimeStr + ")."
-                            );
-                        }
-                        currentTripId = null;
-                        currentRouteInfo = null;
-                        tripStartStop = null;
-                        departureTime = -1;
-                        arrivalTime = -1;
-                    }
-                    int travelTime = footpath.getTravelTime();
-                    String depTimeStr = TimeConversion.fromSeconds(entry.getTArr() - travelTime);
-                    String arrTimeStr = TimeConversion.fromSeconds(entry.getTArr());
-                    String duration = TimeConversion.formatDuration(travelTime);
-                    System.out.println(
-                        "From " + AinsiCode.BOLD + AinsiCode.RED + pDep.getName() + AinsiCode.RESET + " (" + pDep.getTransportOperatorStop() + 
-                        "), leave on foot at " + AinsiCode.BOLD + AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to reach " + AinsiCode.BOLD + 
-                        AinsiCode.RED + pArr.getName() + AinsiCode.RESET + " (" + pArr.getTransportOperatorStop() + ") by " + AinsiCode.BOLD + 
-                        AinsiCode.RED + arrTimeStr + AinsiCode.RESET + ". Expect a walk of around " + AinsiCode.BOLD + AinsiCode.RED + duration + AinsiCode.RESET + "."
-                    );
-
-                    break;
-                }
-
-                case Connection connection -> {
-                    String tripId = connection.getTripId();
-                    RouteInfo routeInfo = connection.getRouteInfo();
-                    if (currentTripId == null) {
-                        currentTripId = tripId;
-                        currentRouteInfo = routeInfo;
-                        tripStartStop = pDep;
-                        departureTime = connection.getTDep();
-                        arrivalTime = connection.getTArr();
-                    } else if (!tripId.equals(currentTripId)) {
-                        if (tripStartStop != null && previousStop != null && currentRouteInfo != null) {
-                            String depTimeStr = TimeConversion.fromSeconds(departureTime);
-                            String arrTimeStr = TimeConversion.fromSeconds(arrivalTime);
-                            System.out.println(
-                                "Take " + AinsiCode.BOLD + AinsiCode.RED + currentRouteInfo.toString() + AinsiCode.RESET + " from "
-                                + AinsiCode.BOLD + AinsiCode.RED + tripStartStop.getName() + AinsiCode.RESET + " at " + AinsiCode.BOLD + 
-                                AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to " + AinsiCode.BOLD + AinsiCode.RED + 
-                                previousStop.getName() + AinsiCode.RESET + " (" + arrTimeStr + ")."
-                            );
-                        }
-                        currentTripId = tripId;
-                        currentRouteInfo = routeInfo;
-                        tripStartStop = pDep;
-                        departureTime = connection.getTDep();
-                        arrivalTime = connection.getTArr();
-                    }
-                    break;
-                }
-
-                default -> {
-                    // Same trip -> continue
-                }
+            int movement = ws.parentMovement[currentStopIdx];
+            int tArr = ws.earliestArrival[currentStopIdx];
+            if (movement >= 0) {
+                int boarding = ws.boardingConnection[connections.tripIdx[movement]];
+                legs.add(new Leg(new TripLeg(connections.tripIds[connections.tripIdx[movement]],
+                        connections.getRouteInfo(movement), stops[connections.pDepIdx[boarding]], stops[currentStopIdx],
+                        connections.tDep[boarding], tArr), connections.tDep[boarding], tArr));
+                currentStopIdx = connections.pDepIdx[boarding];
+            } else {
+                int footpathPDepIdx = footpathPDepIdx(movement);
+                int duration = footpaths.getDuration(footpathPDepIdx, currentStopIdx);
+                legs.add(new Leg(new Footpath(stops[footpathPDepIdx], stops[currentStopIdx], duration),
+                        tArr - duration, tArr));
+                currentStopIdx = footpathPDepIdx;
             }
-
-            previousStop = pArr;
         }
 
-        if (currentTripId != null) {
-            if (tripStartStop != null && previousStop != null && currentRouteInfo != null) {
-                String depTimeStr = TimeConversion.fromSeconds(departureTime);
-                String arrTimeStr = TimeConversion.fromSeconds(arrivalTime);
-                System.out.println(
-                    "Take " + AinsiCode.BOLD + AinsiCode.RED + currentRouteInfo.toString() + AinsiCode.RESET + " from "
-                    + AinsiCode.BOLD + AinsiCode.RED + tripStartStop.getName() + AinsiCode.RESET + " at " + AinsiCode.BOLD + 
-                    AinsiCode.RED + depTimeStr + AinsiCode.RESET + " to " + AinsiCode.BOLD + AinsiCode.RED + 
-                    previousStop.getName() + AinsiCode.RESET + " (" + arrTimeStr + ")."
-                );
-            }
-        }
+        Collections.reverse(legs);
+        return new Journey(tDep, ws.earliestArrival[pArrIdxEarliest], legs);
     }
 
     /**
-     * Returns true if the given connection's departure time is after the
-     * earliest arrival time to one of pArrIds.
+     * Returns true if the given connection's departure time (cTDep) is after the
+     * earliest arrival time to one of pArrIdxs.
      *
      * NOTE: in the paper "Intriguingly Simple and Fast Transit Routing?" by
      * Julian Dibbelt, Thomas Pajor, Ben Strasser, and Dorothea Wagner,
@@ -185,10 +108,9 @@ public class Solver extends AbstractSolver {
      * soon as it scans a connection whose departure time exceeds the target stop’s
      * earliest arrival time."
      */
-    boolean checkConnectionTdepAfterEarliestTArr(Map<String, BestKnownEntry> bestKnown, Connection c,
-            List<String> pArrIds) {
-        for (String pArrId : pArrIds) {
-            if (c.getTDep() >= getBestKnownArrivalTime(bestKnown, pArrId)) {
+    static boolean checkConnectionTdepAfterEarliestTArr(QueryWorkspace ws, int cTDep, int[] pArrIdxs) {
+        for (int pArrIdx : pArrIdxs) {
+            if (cTDep >= ws.getBestKnownArrivalTime(pArrIdx)) {
                 return true;
             }
         }
@@ -197,112 +119,348 @@ public class Solver extends AbstractSolver {
     }
 
     /**
+     * Runs the earliest arrival scan from the departure stops, leaving at tDep.
+     *
      * Connections must be sorted by their departure time.
+     *
+     * @return the index of the arrival stop we arrive at earliest, -1 if none of
+     *         them can be reached
      */
-    public void solve(List<String> pDepIds, List<String> pArrIds, int tDep) {
-        for (String pDepId : pDepIds) {
-            for (String pArrId : pArrIds) {
-                if (pDepId.equals(pArrId)) {
-                    System.out.println("You are already at your destination");
-                    return;
-                }
-            }
-        }
-
-        List<Connection> filteredConnections = getFilteredConnections(tDep);
+    private int scanEarliestArrival(QueryWorkspace ws, int[] pDepIdxs, int[] pArrIdxs, int tDep) {
+        return scanEarliestArrival(ws, pDepIdxs, pArrIdxs, tDep, Integer.MAX_VALUE);
+    }
 
-        // Not in hashmap means infinity
-        Map<String, BestKnownEntry> bestKnown = new HashMap<>();
+    /**
+     * Same as above, but the connections departing after tArrMax are not
+     * scanned, so that the labels are only exact up to tArrMax.
+     */
+    private int scanEarliestArrival(QueryWorkspace ws, int[] pDepIdxs, int[] pArrIdxs, int tDep, int tArrMax) {
+        // Every stop not stamped with the new epoch has an infinite arrival time
+        ws.nextEpoch();
 
-        for (String pDepId : pDepIds) {
+        for (int pDepIdx : pDepIdxs) {
             // The time to get to pDep is tDep because we are already there
-            bestKnown.put(pDepId, new BestKnownEntry(tDep, null));
+            ws.setBestKnown(pDepIdx, tDep, NO_MOVEMENT);
+        }
 
+        // scan the columns directly, only stop indices and times are read
+        final int[] cPDepIdx = connections.pDepIdx;
+        final int[] cPArrIdx = connections.pArrIdx;
+        final int[] cTDep = connections.tDep;
+        final int[] cTArr = connections.tArr;
+        final int[] cTripIdx = connections.tripIdx;
+        final int[] fStart = footpaths.outStart;
+        final int[] fPArrIdx = footpaths.outStop;
+        final int[] fDuration = footpaths.outDuration;
+        final int[] tripStamp = ws.tripStamp;
+        final int[] boardingConnection = ws.boardingConnection;
+        final int epoch = ws.epoch;
+
+        for (int pDepIdx : pDepIdxs) {
             // Footpaths initial setup
-            List<Footpath> footpathsFromPDep = stopIdToOutgoingFootpaths.get(pDepId);
-            if (footpathsFromPDep != null) {
-                for (Footpath f : stopIdToOutgoingFootpaths.get(pDepId)) {
-                    bestKnown.put(f.getPArr().getId(),
-                            new BestKnownEntry(tDep + f.getTravelTime(), f));
+            for (int e = fStart[pDepIdx]; e < fStart[pDepIdx + 1]; e++) {
+                int footpathTArr = tDep + fDuration[e];
+                if (footpathTArr < ws.getBestKnownArrivalTime(fPArrIdx[e])) {
+                    ws.setBestKnown(fPArrIdx[e], footpathTArr, footpathMovement(pDepIdx));
                 }
             }
         }
 
-        for (Connection c : filteredConnections) {
-            if (checkConnectionTdepAfterEarliestTArr(bestKnown, c, pArrIds)) {
+        for (int i = getEarliestReachableConnectionIdx(tDep); i < connections.size(); i++) {
+            if (cTDep[i] > tArrMax || checkConnectionTdepAfterEarliestTArr(ws, cTDep[i], pArrIdxs)) {
                 break;
             }
 
-            // τ (pdep(c)) ≤ τdep(c).
-            boolean cIsReachable = getBestKnownArrivalTime(bestKnown, c.getPDep().getId()) <= c.getTDep();
+            // The connection can be taken if we are already sitting in its trip, or if we
+            // can board it: τ (pdep(c)) ≤ τdep(c).
+            int trip = cTripIdx[i];
+            boolean tripIsReached = tripStamp[trip] == epoch;
+            if (!tripIsReached && ws.getBestKnownArrivalTime(cPDepIdx[i]) <= cTDep[i]) {
+                tripStamp[trip] = epoch;
+                boardingConnection[trip] = i;
+                tripIsReached = true;
+            }
 
             // τarr(c) < τ (parr(c))
-            boolean cIsFaster = c.getTArr() < getBestKnownArrivalTime(bestKnown, c.getPArr().getId());
+            if (tripIsReached && cTArr[i] < ws.getBestKnownArrivalTime(cPArrIdx[i])) {
+                int footpathPDepIdx = cPArrIdx[i];
+                ws.setBestKnown(footpathPDepIdx, cTArr[i], i);
 
-            if (cIsReachable && cIsFaster) {
-                bestKnown.put(c.getPArr().getId(), new BestKnownEntry(c.getTArr(), c));
+                for (int e = fStart[footpathPDepIdx]; e < fStart[footpathPDepIdx + 1]; e++) {
+                    int footpathPArrIdx = fPArrIdx[e];
 
-                List<Footpath> footpathsFromCPArr = stopIdToOutgoingFootpaths.get(c.getPArr().getId());
-                if (footpathsFromCPArr != null) {
-                    Stop footpathPDep = c.getPArr();
+                    int footpathTArr = cTArr[i] + fDuration[e];
+                    boolean fpIsFaster = footpathTArr < ws.getBestKnownArrivalTime(footpathPArrIdx);
+                    if (fpIsFaster)
+                        ws.setBestKnown(footpathPArrIdx, footpathTArr, footpathMovement(footpathPDepIdx));
+                }
+            }
+        }
 
-                    for (Footpath f : footpathsFromCPArr) {
-                        Stop footpathPArr = f.getPArr();
+        return findPArrIdxEarliest(ws, pArrIdxs);
+    }
 
-                        int footpathTArr = getBestKnownArrivalTime(bestKnown, footpathPDep.getId()) + f.getTravelTime();
-                        boolean fpIsFaster = footpathTArr < getBestKnownArrivalTime(bestKnown, footpathPArr.getId());
-                        if (fpIsFaster)
-                            bestKnown.put(footpathPArr.getId(), new BestKnownEntry(footpathTArr, f));
-                    }
-                }
+    /**
+     * Returns the journey from one of pDepIds to one of pArrIds leaving at tDep
+     * and arriving the earliest. The journey has no legs if we are already at
+     * destination, and the optional is empty if the target cannot be reached.
+     *
+     * Connections must be sorted by their departure time.
+     */
+    public Optional<Journey> solve(List<String> pDepIds, List<String> pArrIds, int tDep) {
+        for (String pDepId : pDepIds) {
+            if (pArrIds.contains(pDepId)) {
+                return Optional.of(new Journey(tDep, tDep, List.of()));
             }
         }
 
-        String pArrIdEarliest = findPArrIdEarliest(bestKnown, pArrIds);
-        if (pArrIdEarliest == null) {
-            System.out.println("unreachable target");
-            return;
+        try (QueryWorkspace ws = workspaces.acquire()) {
+            int pArrIdxEarliest = scanEarliestArrival(ws, toStopIdxs(pDepIds), toStopIdxs(pArrIds), tDep);
+            if (pArrIdxEarliest == -1) {
+                return Optional.empty();
+            }
+
+            return Optional.of(reconstructSolution(ws, pArrIdxEarliest, tDep));
         }
+    }
 
-        int tArrEarliest = bestKnown.get(pArrIdEarliest).getTArr();
-        Stack<BestKnownEntry> finalPath = reconstructSolution(bestKnown, pDepIds, pArrIdEarliest);
+    /**
+     * Returns the earliest arrival time at one of pArrIdxs when leaving one of
+     * pDepIdxs at tDep, UNREACHABLE if none of them can be reached. The scan runs
+     * in the workspace of the caller's query.
+     */
+    int earliestArrivalTime(QueryWorkspace ws, int[] pDepIdxs, int[] pArrIdxs, int tDep) {
+        int pArrIdxEarliest = scanEarliestArrival(ws, pDepIdxs, pArrIdxs, tDep);
+        return (pArrIdxEarliest == -1) ? UNREACHABLE : ws.earliestArrival[pArrIdxEarliest];
+    }
 
-        String pDepName = finalPath.peek().getMovement().getPDep().getName();
-        String pArrName = finalPath.firstElement().getMovement().getPArr().getName();
+    /**
+     * Computes the earliest arrival time at every stop when leaving one of
+     * pDepIds at tDep.
+     *
+     * @return the arrival times indexed by Stop.getIndex(), UNREACHABLE for the
+     *         stops that cannot be reached
+     */
+    public int[] solveOneToAll(List<String> pDepIds, int tDep) {
+        return solveOneToAll(pDepIds, tDep, Integer.MAX_VALUE);
+    }
 
-        System.out.println(
-                AinsiCode.BOLD + "\nHere are the directions for the shortest route from " +
-                        AinsiCode.RED + pDepName + AinsiCode.RESET + AinsiCode.BOLD +
-                        " to " + AinsiCode.RED + pArrName + AinsiCode.RESET + AinsiCode.BOLD
-                        +
-                        ", departing at " + AinsiCode.RED + TimeConversion.fromSeconds(tDep) +
-                        AinsiCode.RESET + AinsiCode.BOLD + " :\n" + AinsiCode.RESET);
+    /**
+     * Same as above, but the stops reached after tArrMax are reported as
+     * UNREACHABLE, and the scan stops at tArrMax.
+     */
+    public int[] solveOneToAll(List<String> pDepIds, int tDep, int tArrMax) {
+        try (QueryWorkspace ws = workspaces.acquire()) {
+            // no target, so the scan only stops at tArrMax
+            scanEarliestArrival(ws, toStopIdxs(pDepIds), new int[0], tDep, tArrMax);
+
+            int[] arrivalTimes = new int[stops.length];
+            for (int stopIdx = 0; stopIdx < arrivalTimes.length; stopIdx++) {
+                int tArr = ws.getBestKnownArrivalTime(stopIdx);
+                arrivalTimes[stopIdx] = (tArr <= tArrMax) ? tArr : UNREACHABLE;
+            }
+            return arrivalTimes;
+        }
+    }
 
-        printInstructions(finalPath);
+    /**
+     * Returns the duration of the direct walk from pDepId to pArrId, -1 if they
+     * are too far apart to walk.
+     */
+    public int getWalkingDuration(String pDepId, String pArrId) {
+        return footpaths.getDuration(stopIdToStop.get(pDepId).getIndex(), stopIdToStop.get(pArrId).getIndex());
+    }
 
-        System.out.println(
-                AinsiCode.BOLD + AinsiCode.UNDERLINE + AinsiCode.RED + "You will arrive at " + stopIdToStop.get(pArrIdEarliest).getName()
-                        + " at " + TimeConversion.fromSeconds(tArrEarliest) + AinsiCode.RESET);
+    /**
+     * Returns the arrival time at the target of the connection i when alighting
+     * there (and walking to the target if needed), Integer.MAX_VALUE if the
+     * target cannot be reached this way.
+     */
+    private int arrivalByWalkingToTarget(QueryWorkspace ws, int i, int pArrIdx) {
+        int pIdx = connections.pArrIdx[i];
+        if (pIdx == pArrIdx) {
+            return connections.tArr[i];
+        }
+        int walk = ws.finalWalkDuration[pIdx];
+        return (walk >= 0) ? connections.tArr[i] + walk : Integer.MAX_VALUE;
     }
 
     /**
-     * Generates all the footpaths.
+     * Computes the journeys from pDepId to pArrId leaving between tStart and tEnd
+     * that are not beaten by a journey leaving later and arriving no later, by
+     * increasing departure time.
+     *
+     * All of them are found by a single backward scan of the connections (the
+     * profile variant of CSA): for each stop, the profile of the (departure time,
+     * arrival time at pArrId) pairs is built in StopProfiles, and for each trip
+     * the earliest arrival when sitting in it. The journeys that are not faster
+     * than walking directly to pArrId are left out (see getWalkingDuration).
      */
-    private void genFootpaths(double maxDistKm) {
-        BallTree ballTree = new BallTree(new ArrayList<>(stopIdToStop.values()));
-        for (Stop sourceStop : stopIdToStop.values()) {
-            List<Stop> nearbyStops = ballTree.findStopsWithinRadius(sourceStop, maxDistKm);
-
-            for (Stop arrStop : nearbyStops) {
-                if (!sourceStop.equals(arrStop)) {
-                    Footpath footpath = new Footpath(sourceStop, arrStop);
-
-                    stopIdToOutgoingFootpaths
-                            .computeIfAbsent(sourceStop.getId(), k -> new ArrayList<>())
-                            .add(footpath);
+    public List<Journey> solveProfile(String pDepId, String pArrId, int tStart, int tEnd) {
+        int pDepIdx = stopIdToStop.get(pDepId).getIndex();
+        int pArrIdx = stopIdToStop.get(pArrId).getIndex();
+        if (pDepIdx == pArrIdx) {
+            return List.of();
+        }
+
+        try (QueryWorkspace ws = workspaces.acquire()) {
+            final int[] inStart = footpaths.inStart;
+            final int[] inStop = footpaths.inStop;
+            final int[] inDuration = footpaths.inDuration;
+            for (int e = inStart[pArrIdx]; e < inStart[pArrIdx + 1]; e++) {
+                ws.finalWalkDuration[inStop[e]] = inDuration[e];
+            }
+
+            try {
+                return solveProfile(ws, pDepIdx, pArrIdx, tStart, tEnd);
+            } finally {
+                for (int e = inStart[pArrIdx]; e < inStart[pArrIdx + 1]; e++) {
+                    ws.finalWalkDuration[inStop[e]] = -1;
                 }
             }
         }
     }
 
+    /**
+     * Runs the scan of solveProfile in the workspace, whose finalWalkDuration
+     * holds the walks to pArrIdx.
+     */
+    private List<Journey> solveProfile(QueryWorkspace ws, int pDepIdx, int pArrIdx, int tStart, int tEnd) {
+        // Any journey worth listing arrives no later than the earliest arrival when
+        // leaving at tEnd, so the connections departing after it are not scanned
+        // (one departing at it still can, if it takes no time).
+        int pArrIdxEarliest = scanEarliestArrival(ws, new int[] { pDepIdx }, new int[] { pArrIdx }, tEnd);
+        int tArrCutoff = (pArrIdxEarliest == -1) ? Integer.MAX_VALUE : ws.earliestArrival[pArrIdxEarliest];
+
+        StopProfiles profiles = ws.getStopProfiles();
+        profiles.clear();
+        ws.nextEpoch(); // the per-trip labels now hold the trip arrival times
+
+        final int[] inStart = footpaths.inStart;
+        final int[] inStop = footpaths.inStop;
+        final int[] inDuration = footpaths.inDuration;
+        final int[] tripStamp = ws.tripStamp;
+        final int[] tripArrival = ws.tripArrival;
+        final int[] tripExit = ws.tripExit;
+        final int epoch = ws.epoch;
+
+        final int[] cPDepIdx = connections.pDepIdx;
+        final int[] cPArrIdx = connections.pArrIdx;
+        final int[] cTDep = connections.tDep;
+        final int[] cTArr = connections.tArr;
+        final int[] cTripIdx = connections.tripIdx;
+
+        int first = getEarliestReachableConnectionIdx(tStart);
+        int last = (tArrCutoff == Integer.MAX_VALUE) ? connections.size()
+                : getEarliestReachableConnectionIdx(tArrCutoff + 1);
+        for (int i = last - 1; i >= first; i--) {
+            int trip = cTripIdx[i];
+            int pIdx = cPArrIdx[i];
+
+            // τ1: alight and walk to the target (if needed)
+            int tArrBest = arrivalByWalkingToTarget(ws, i, pArrIdx);
+            int exitBest = i;
+
+            // τ2: stay seated in the trip
+            if (tripStamp[trip] == epoch && tripArrival[trip] <= tArrBest) {
+                tArrBest = tripArrival[trip];
+                exitBest = tripExit[trip];
+            }
+
+            // τ3: alight and transfer
+            int k = profiles.evaluate(pIdx, cTArr[i]);
+            if (k != -1 && profiles.getArr(pIdx, k) < tArrBest) {
+                tArrBest = profiles.getArr(pIdx, k);
+                exitBest = i;
+            }
+
+            if (tArrBest == Integer.MAX_VALUE) {
+                continue;
+            }
+
+            tripStamp[trip] = epoch;
+            tripArrival[trip] = tArrBest;
+            tripExit[trip] = exitBest;
+
+            int boardingPIdx = cPDepIdx[i];
+            if (boardingPIdx == pArrIdx || (boardingPIdx == pDepIdx && cTDep[i] > tEnd)) {
+                continue;
+            }
+            profiles.insert(boardingPIdx, cTDep[i], tArrBest, i, exitBest);
+
+            // The connection can also be boarded by walking to its departure stop. This
+            // is done even if the entry above was dominated, as it may have been by a
+            // journey starting with a footpath, which cannot follow another one.
+            for (int e = inStart[boardingPIdx]; e < inStart[boardingPIdx + 1]; e++) {
+                int source = inStop[e];
+                int tDepSource = cTDep[i] - inDuration[e];
+                if (source == pArrIdx || (source == pDepIdx && tDepSource > tEnd)) {
+                    continue;
+                }
+                profiles.insert(source, tDepSource, tArrBest, i, exitBest);
+            }
+        }
+
+        int walkingDuration = footpaths.getDuration(pDepIdx, pArrIdx);
+        List<Journey> journeys = new ArrayList<>();
+        // the entries are stored by decreasing departure time
+        for (int k = profiles.size(pDepIdx) - 1; k >= 0; k--) {
+            int tDep = profiles.getDep(pDepIdx, k);
+            int tArr = profiles.getArr(pDepIdx, k);
+            if (tDep < tStart || tDep > tEnd || (walkingDuration >= 0 && tArr - tDep >= walkingDuration)) {
+                continue;
+            }
+            journeys.add(extractProfileJourney(ws, pDepIdx, pArrIdx, k));
+        }
+
+        return journeys;
+    }
+
+    /**
+     * Follows the profiles from the k-th entry of the departure stop's profile
+     * until the target is reached.
+     */
+    private Journey extractProfileJourney(QueryWorkspace ws, int pDepIdx, int pArrIdx, int k) {
+        StopProfiles profiles = ws.getStopProfiles();
+        List<Leg> legs = new ArrayList<>();
+        int tDep = profiles.getDep(pDepIdx, k);
+        int currentStopIdx = pDepIdx;
+        int t = tDep;
+
+        while (true) {
+            int boarding = profiles.getBoarding(currentStopIdx, k);
+            int exit = profiles.getExit(currentStopIdx, k);
+
+            int boardingPIdx = connections.pDepIdx[boarding];
+            if (boardingPIdx != currentStopIdx) {
+                int duration = footpaths.getDuration(currentStopIdx, boardingPIdx);
+                legs.add(new Leg(new Footpath(stops[currentStopIdx], stops[boardingPIdx], duration),
+                        connections.tDep[boarding] - duration, connections.tDep[boarding]));
+            }
+
+            int exitPIdx = connections.pArrIdx[exit];
+            int trip = connections.tripIdx[boarding];
+            legs.add(new Leg(new TripLeg(connections.tripIds[trip], connections.getRouteInfo(boarding),
+                    stops[boardingPIdx], stops[exitPIdx], connections.tDep[boarding], connections.tArr[exit]),
+                    connections.tDep[boarding], connections.tArr[exit]));
+            currentStopIdx = exitPIdx;
+            t = connections.tArr[exit];
+
+            if (currentStopIdx == pArrIdx) {
+                return new Journey(tDep, t, legs);
+            }
+
+            // walk to the target unless transferring arrives earlier
+            k = profiles.evaluate(currentStopIdx, t);
+            int walk = ws.finalWalkDuration[currentStopIdx];
+            if (walk >= 0 && (k == -1 || t + walk <= profiles.getArr(currentStopIdx, k))) {
+                legs.add(new Leg(new Footpath(stops[currentStopIdx], stops[pArrIdx], walk), t, t + walk));
+                return new Journey(tDep, t + walk, legs);
+            }
+            if (k == -1) {
+                throw new IllegalStateException("No journey found to the target from: " + stops[currentStopIdx].getId());
+            }
+        }
+    }
+
 }
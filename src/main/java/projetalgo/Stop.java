@@ -5,7 +5,7 @@ public class Stop {
     private final Coord coord;
     private final String name;
     private final String transportOperatorStop;
-    private RouteInfo routeInfo;
+    private int index = -1; // dense index, assigned once all the stops are loaded
 
     public Stop(String id, String name, Coord coord, String transportOperatorStop) {
         this.id = id;
@@ -18,6 +18,18 @@ public class Stop {
         return id;
     }
 
+    /**
+     * Returns the dense index of this stop (between 0 and the number of stops),
+     * used to store per-stop data in arrays instead of maps.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public Coord getCoord() {
         return coord;
     }
@@ -30,14 +42,6 @@ public class Stop {
         return transportOperatorStop;
     }
 
-    public void setRouteInfo(RouteInfo route) {
-        this.routeInfo = route;
-    }
-
-    public RouteInfo getRouteInfo() {
-        return routeInfo;
-    }
-
     @Override
     public String toString() {
         return String.format("Name: %s, id: %s, coord: %s", name, id, coord);
@@ -0,0 +1,56 @@
+package projetalgo;
+
+import java.util.List;
+
+import org.jline.reader.Candidate;
+import org.jline.reader.Completer;
+import org.jline.reader.LineReader;
+import org.jline.reader.ParsedLine;
+import org.jline.reader.Parser;
+import org.jline.reader.impl.DefaultParser;
+
+/**
+ * Completes the stop names typed on the console with the names of a
+ * StopNameIndex (when pressing tab).
+ *
+ * The stop names contain spaces and apostrophes, so the line reader must read
+ * the whole line as a single word (see parser) for a name to be completed from
+ * its first word.
+ */
+public class StopNameCompleter implements Completer {
+    private static final int MAX_CANDIDATES = 100;
+
+    private final StopNameIndex stopNames;
+
+    public StopNameCompleter(StopNameIndex stopNames) {
+        this.stopNames = stopNames;
+    }
+
+    @Override
+    public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+        String prefix = line.line().substring(0, line.cursor());
+        if (prefix.isBlank()) {
+            return;
+        }
+        for (String name : stopNames.namesStartingWith(prefix, MAX_CANDIDATES)) {
+            candidates.add(new Candidate(name, name, null, null, null, null, true));
+        }
+    }
+
+    /**
+     * Returns a parser reading the whole line as a single word, without quotes
+     * nor escape characters.
+     */
+    public static Parser parser() {
+        DefaultParser parser = new DefaultParser() {
+            @Override
+            public boolean isDelimiterChar(CharSequence buffer, int pos) {
+                return false;
+            }
+        };
+        parser.setQuoteChars(new char[0]);
+        parser.setEscapeChars(new char[0]);
+        return parser;
+    }
+
+}
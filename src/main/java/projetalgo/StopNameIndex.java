@@ -0,0 +1,234 @@
+package projetalgo;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the stops by name, built with the Data. The names are normalized
+ * (see normalize) so that the case, the accents and the spacing of a name do
+ * not matter.
+ *
+ * The distinct normalized names are kept in a sorted array, with the stops of
+ * each name in a single array: looking up a name or the names starting with a
+ * prefix is a binary search, and the names close to a misspelled one are found
+ * with a bounded edit distance.
+ */
+public class StopNameIndex {
+    // the edit distance of the closest names: 1 typo for names shorter than
+    // TWO_TYPOS_LENGTH, 2 typos otherwise, none below ONE_TYPO_LENGTH
+    private static final int ONE_TYPO_LENGTH = 4;
+    private static final int TWO_TYPOS_LENGTH = 8;
+
+    private final String[] keys; // distinct normalized names, sorted
+    private final String[] names; // a spelling of each key, as in the data
+    private final int[] start; // the stops of keys[k] are stopsByKey[start[k]..start[k + 1])
+    private final Stop[] stopsByKey;
+
+    public StopNameIndex(Collection<Stop> stops) {
+        // group the stops by normalized name, in the order of their index so that
+        // the order does not depend on the iteration order of the collection
+        Stop[] byIndex = stops.toArray(new Stop[0]);
+        Arrays.sort(byIndex, Comparator.comparingInt(Stop::getIndex));
+        Map<String, List<Stop>> stopsOfKey = new HashMap<>();
+        for (Stop stop : byIndex) {
+            stopsOfKey.computeIfAbsent(normalize(stop.getName()), k -> new ArrayList<>(1)).add(stop);
+        }
+
+        this.keys = stopsOfKey.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        this.names = new String[keys.length];
+        this.start = new int[keys.length + 1];
+        this.stopsByKey = new Stop[byIndex.length];
+        int n = 0;
+        for (int k = 0; k < keys.length; k++) {
+            List<Stop> stopsWithKey = stopsOfKey.get(keys[k]);
+            names[k] = stopsWithKey.get(0).getName();
+            start[k] = n;
+            for (Stop stop : stopsWithKey) {
+                stopsByKey[n++] = stop;
+            }
+        }
+        start[keys.length] = n;
+    }
+
+    /**
+     * Returns the name in lower case, without accents and with single spaces
+     * between its words.
+     */
+    public static String normalize(String name) {
+        return normalize(name, false);
+    }
+
+    /**
+     * Same as above, but keeps a single trailing space if there is one (for the
+     * prefixes, "gare " must not match "garenne").
+     */
+    private static String normalize(String name, boolean keepTrailingSpace) {
+        // most names are ASCII and have no accent to remove
+        String decomposed = isAscii(name) ? name : Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        if (space && keepTrailingSpace) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first key not less than key.
+     */
+    private int lowerBound(String key) {
+        int i = 0;
+        int j = keys.length;
+        while (i < j) {
+            int mid = (i + j) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                i = mid + 1;
+            } else {
+                j = mid;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the stops with the given name (once normalized), in the order of
+     * their index.
+     */
+    public List<Stop> stopsWithName(String name) {
+        String key = normalize(name);
+        int k = lowerBound(key);
+        if (k == keys.length || !keys[k].equals(key)) {
+            return List.of();
+        }
+        return Collections.unmodifiableList(Arrays.asList(stopsByKey).subList(start[k], start[k + 1]));
+    }
+
+    /**
+     * Returns at most limit names starting with the given prefix (once
+     * normalized), in alphabetical order.
+     */
+    public List<String> namesStartingWith(String prefix, int limit) {
+        String keyPrefix = normalize(prefix, true);
+        List<String> result = new ArrayList<>();
+        for (int k = lowerBound(keyPrefix); k < keys.length && result.size() < limit; k++) {
+            if (!keys[k].startsWith(keyPrefix)) {
+                break;
+            }
+            result.add(names[k]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns at most limit names within a few typos of the given name (1 typo
+     * for names shorter than 8 characters, 2 otherwise, none for names shorter
+     * than 4 characters), the closest first.
+     */
+    public List<String> closestNames(String name, int limit) {
+        String key = normalize(name);
+        int maxDistance = (key.length() < ONE_TYPO_LENGTH) ? 0 : (key.length() < TWO_TYPOS_LENGTH) ? 1 : 2;
+
+        List<List<String>> byDistance = new ArrayList<>();
+        for (int d = 0; d <= maxDistance; d++) {
+            byDistance.add(new ArrayList<>());
+        }
+        int[] previous = new int[key.length() + 1];
+        int[] current = new int[key.length() + 1];
+        for (int k = 0; k < keys.length; k++) {
+            int d = boundedDistance(key, keys[k], maxDistance, previous, current);
+            if (d <= maxDistance) {
+                byDistance.get(d).add(names[k]);
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (List<String> closest : byDistance) {
+            for (String closestName : closest) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(closestName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the edit distance (Levenshtein) between a and b if it is at most
+     * maxDistance, maxDistance + 1 otherwise. Only the cells of the diagonal band
+     * of width 2 * maxDistance + 1 are computed, and the computation stops as soon
+     * as a whole row is above maxDistance. previous and current are scratch rows
+     * of a.length() + 1 cells.
+     */
+    private static int boundedDistance(String a, String b, int maxDistance, int[] previous, int[] current) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+
+        int infinity = maxDistance + 1;
+        for (int i = 0; i <= n; i++) {
+            previous[i] = (i <= maxDistance) ? i : infinity;
+        }
+        for (int j = 1; j <= m; j++) {
+            int from = Math.max(1, j - maxDistance);
+            int to = Math.min(n, j + maxDistance);
+            current[0] = (j <= maxDistance) ? j : infinity;
+            if (from > 1) {
+                current[from - 1] = infinity;
+            }
+            int rowMin = current[0];
+            char cb = b.charAt(j - 1);
+            for (int i = from; i <= to; i++) {
+                int cost = (a.charAt(i - 1) == cb) ? 0 : 1;
+                int d = Math.min(Math.min(previous[i] + 1, current[i - 1] + 1), previous[i - 1] + cost);
+                current[i] = Math.min(d, infinity);
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            if (to < n) {
+                current[to + 1] = infinity;
+            }
+            if (rowMin > maxDistance) {
+                return infinity;
+            }
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[n];
+    }
+
+}
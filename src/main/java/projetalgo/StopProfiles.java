@@ -0,0 +1,163 @@
+package projetalgo;
+
+import java.util.Arrays;
+
+/**
+ * Earliest arrival profiles of all the stops, used by the profile queries of
+ * Solver.
+ *
+ * The profile of a stop is the Pareto set of the (departure time, arrival time)
+ * pairs of the journeys leaving this stop: a later departure must have a
+ * strictly later arrival. The entries are stored by decreasing departure time
+ * (and thus decreasing arrival time), which is the order in which a backward
+ * connection scan finds them. Each entry also stores the connection to board and
+ * the connection to alight from.
+ *
+ * The profiles are kept between queries and invalidated with an epoch stamp, so
+ * that the arrays are only allocated for the stops actually reached.
+ */
+class StopProfiles {
+    private final int[][] dep;
+    private final int[][] arr;
+    private final int[][] boarding;
+    private final int[][] exit;
+    private final int[] size;
+    private final int[] stamp;
+    private int epoch = 0;
+
+    StopProfiles(int nStops) {
+        this.dep = new int[nStops][];
+        this.arr = new int[nStops][];
+        this.boarding = new int[nStops][];
+        this.exit = new int[nStops][];
+        this.size = new int[nStops];
+        this.stamp = new int[nStops];
+    }
+
+    /**
+     * Empties all the profiles.
+     */
+    void clear() {
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 0;
+        }
+        epoch++;
+    }
+
+    int size(int stopIdx) {
+        return (stamp[stopIdx] == epoch) ? size[stopIdx] : 0;
+    }
+
+    int getDep(int stopIdx, int k) {
+        return dep[stopIdx][k];
+    }
+
+    int getArr(int stopIdx, int k) {
+        return arr[stopIdx][k];
+    }
+
+    int getBoarding(int stopIdx, int k) {
+        return boarding[stopIdx][k];
+    }
+
+    int getExit(int stopIdx, int k) {
+        return exit[stopIdx][k];
+    }
+
+    /**
+     * Returns the number of entries departing at or after t (they are the first
+     * ones).
+     */
+    private int countDepartingFrom(int stopIdx, int t) {
+        int[] stopDep = dep[stopIdx];
+        int i = 0;
+        int j = size(stopIdx);
+        while (i < j) {
+            int mid = (i + j) >>> 1;
+            if (stopDep[mid] >= t) {
+                i = mid + 1;
+            } else {
+                j = mid;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the entry of the journey arriving earliest among the ones leaving
+     * the stop at or after t, -1 if there is none.
+     */
+    int evaluate(int stopIdx, int t) {
+        if (size(stopIdx) == 0) {
+            return -1;
+        }
+        // the arrival times decrease with the departure times, so the last entry
+        // departing at or after t arrives earliest
+        return countDepartingFrom(stopIdx, t) - 1;
+    }
+
+    /**
+     * Inserts the entry (tDep, tArr) in the profile of the stop, unless it is
+     * dominated by an entry leaving no earlier and arriving no later. The entries
+     * dominated by the new one are removed.
+     *
+     * @return true if the entry was inserted
+     */
+    boolean insert(int stopIdx, int tDep, int tArr, int boardingConnection, int exitConnection) {
+        if (stamp[stopIdx] != epoch) {
+            stamp[stopIdx] = epoch;
+            size[stopIdx] = 0;
+            if (dep[stopIdx] == null) {
+                dep[stopIdx] = new int[4];
+                arr[stopIdx] = new int[4];
+                boarding[stopIdx] = new int[4];
+                exit[stopIdx] = new int[4];
+            }
+        }
+
+        int n = size[stopIdx];
+        int[] stopDep = dep[stopIdx];
+        int[] stopArr = arr[stopIdx];
+
+        // position of the new entry: after all the entries departing at or after
+        // tDep (usually all of them, as the connections are scanned backwards)
+        int pos = (n == 0 || stopDep[n - 1] >= tDep) ? n : countDepartingFrom(stopIdx, tDep);
+        if (pos > 0 && stopArr[pos - 1] <= tArr) {
+            return false;
+        }
+
+        // the entries [from, to) are dominated by the new one: the one departing at
+        // the same time, and the ones departing earlier without arriving earlier
+        int from = (pos > 0 && stopDep[pos - 1] == tDep) ? pos - 1 : pos;
+        int to = pos;
+        while (to < n && stopArr[to] >= tArr) {
+            to++;
+        }
+
+        int newSize = n - (to - from) + 1;
+        if (newSize > stopDep.length) {
+            int capacity = stopDep.length * 2;
+            dep[stopIdx] = stopDep = Arrays.copyOf(stopDep, capacity);
+            arr[stopIdx] = stopArr = Arrays.copyOf(stopArr, capacity);
+            boarding[stopIdx] = Arrays.copyOf(boarding[stopIdx], capacity);
+            exit[stopIdx] = Arrays.copyOf(exit[stopIdx], capacity);
+        }
+        if (to != from + 1) {
+            int moved = n - to;
+            System.arraycopy(stopDep, to, stopDep, from + 1, moved);
+            System.arraycopy(stopArr, to, stopArr, from + 1, moved);
+            System.arraycopy(boarding[stopIdx], to, boarding[stopIdx], from + 1, moved);
+            System.arraycopy(exit[stopIdx], to, exit[stopIdx], from + 1, moved);
+        }
+
+        stopDep[from] = tDep;
+        stopArr[from] = tArr;
+        boarding[stopIdx][from] = boardingConnection;
+        exit[stopIdx][from] = exitConnection;
+        size[stopIdx] = newSize;
+
+        return true;
+    }
+
+}
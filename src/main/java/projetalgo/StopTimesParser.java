@@ -0,0 +1,516 @@
+package projetalgo;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * Dedicated parser for large GTFS stop_times.csv files.
+ *
+ * The file is split into line-aligned chunks that are memory-mapped and parsed
+ * in parallel. The fields are parsed straight from the bytes: times and
+ * integers are never turned into Strings, and the trip and stop ids are
+ * dictionary-encoded so that each distinct id is only decoded once per chunk.
+ *
+ * Quoted fields are not supported by the byte parser: files containing a
+ * quote are read with opencsv instead.
+ */
+public class StopTimesParser {
+    private static final int CHUNK_SIZE = 8 << 20; // bytes
+
+    /**
+     * Columns of a stop_times.csv file, one entry per row, in the order of the
+     * file. The trip and stop ids are stored as codes into tripIds and stopIds.
+     */
+    public static class StopTimes {
+        public final String[] tripIds;
+        public final String[] stopIds;
+        public final int[] tripCode;
+        public final int[] stopCode;
+        public final int[] departureTime;
+        public final int[] stopSequence;
+
+        StopTimes(String[] tripIds, String[] stopIds, int[] tripCode, int[] stopCode, int[] departureTime,
+                int[] stopSequence) {
+            this.tripIds = tripIds;
+            this.stopIds = stopIds;
+            this.tripCode = tripCode;
+            this.stopCode = stopCode;
+            this.departureTime = departureTime;
+            this.stopSequence = stopSequence;
+        }
+
+        public int size() {
+            return tripCode.length;
+        }
+    }
+
+    /**
+     * Thrown by a chunk parser when it finds a quote.
+     */
+    private static class QuotedFieldException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        QuotedFieldException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Parses the given stop_times.csv file.
+     */
+    public static StopTimes parse(String path) throws IOException, CsvValidationException {
+        StopTimes stopTimes = parseMapped(path);
+        return (stopTimes != null) ? stopTimes : parseWithCsvReader(path);
+    }
+
+    /**
+     * Parses the given stop_times.csv file with the byte parser.
+     *
+     * @return the parsed columns, or null if the file contains quoted fields
+     */
+    private static StopTimes parseMapped(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            // ------------------- header -------------------
+
+            long headerEnd = alignToNextLine(channel, 0, fileSize);
+            ByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd);
+            byte[] headerBytes = new byte[(int) headerEnd];
+            headerBuffer.get(headerBytes);
+            String headerLine = new String(headerBytes, StandardCharsets.UTF_8).strip();
+            if (headerLine.isEmpty()) {
+                throw new IllegalArgumentException("CSV file is empty or missing headers.");
+            }
+            if (headerLine.indexOf('"') != -1) {
+                return null;
+            }
+            if (headerLine.charAt(0) == '\uFEFF') { // UTF-8 byte order mark
+                headerLine = headerLine.substring(1);
+            }
+
+            String[] headers = headerLine.split(",", -1);
+            Map<String, Integer> headerMap = new HashMap<>();
+            for (int i = 0; i < headers.length; i++) {
+                headerMap.put(headers[i], i);
+            }
+
+            // Verify that required headers are present
+            String[] requiredHeaders = { "trip_id", "departure_time", "stop_id", "stop_sequence" };
+            for (String header : requiredHeaders) {
+                if (!headerMap.containsKey(header)) {
+                    throw new IllegalArgumentException("Missing required header: " + header);
+                }
+            }
+
+            int[] columns = { headerMap.get("trip_id"), headerMap.get("departure_time"), headerMap.get("stop_id"),
+                    headerMap.get("stop_sequence") };
+
+            // ------------------- chunks -------------------
+
+            List<Callable<Chunk>> tasks = new ArrayList<>();
+            long start = headerEnd;
+            while (start < fileSize) {
+                long end = alignToNextLine(channel, Math.min(fileSize, start + CHUNK_SIZE), fileSize);
+                long chunkStart = start;
+                tasks.add(() -> parseChunk(channel, chunkStart, end, columns));
+                start = end;
+            }
+
+            List<Chunk> chunks = new ArrayList<>();
+            try {
+                for (Future<Chunk> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    chunks.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Parsing of " + path + " interrupted", e);
+            } catch (ExecutionException e) {
+                switch (e.getCause()) {
+                    case QuotedFieldException cause -> {
+                        return null;
+                    }
+                    case IOException cause -> throw cause;
+                    case RuntimeException cause -> throw cause;
+                    case Error cause -> throw cause;
+                    default -> throw new IOException(e.getCause());
+                }
+            }
+
+            return merge(chunks);
+        }
+    }
+
+    /**
+     * Returns the position right after the first '\n' at or after pos, fileSize
+     * if there is none.
+     */
+    private static long alignToNextLine(FileChannel channel, long pos, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        while (pos < fileSize) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return fileSize;
+    }
+
+    // -----------------------------------------------------
+    // Chunk parsing
+    // -----------------------------------------------------
+
+    /**
+     * Rows of one chunk. The codes refer to the chunk's own dictionaries.
+     */
+    private static class Chunk {
+        int size = 0;
+        int[] tripCode = new int[1024];
+        int[] stopCode = new int[1024];
+        int[] departureTime = new int[1024];
+        int[] stopSequence = new int[1024];
+        final ByteStringDictionary tripIds = new ByteStringDictionary();
+        final ByteStringDictionary stopIds = new ByteStringDictionary();
+
+        void add(int trip, int stop, int time, int sequence) {
+            if (size == tripCode.length) {
+                int capacity = size * 2;
+                tripCode = Arrays.copyOf(tripCode, capacity);
+                stopCode = Arrays.copyOf(stopCode, capacity);
+                departureTime = Arrays.copyOf(departureTime, capacity);
+                stopSequence = Arrays.copyOf(stopSequence, capacity);
+            }
+            tripCode[size] = trip;
+            stopCode[size] = stop;
+            departureTime[size] = time;
+            stopSequence[size] = sequence;
+            size++;
+        }
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end, int[] columns) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).get(bytes);
+
+        final int tripIdColumn = columns[0];
+        final int departureTimeColumn = columns[1];
+        final int stopIdColumn = columns[2];
+        final int stopSequenceColumn = columns[3];
+        final int lastColumn = Math.max(Math.max(tripIdColumn, departureTimeColumn),
+                Math.max(stopIdColumn, stopSequenceColumn));
+
+        Chunk chunk = new Chunk();
+
+        int pos = 0;
+        while (pos < bytes.length) {
+            int lineEnd = pos;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = (lineEnd > pos && bytes[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+
+            if (contentEnd > pos) { // skip empty lines
+                int trip = -1;
+                int stop = -1;
+                int time = -1;
+                int sequence = 0;
+
+                int column = 0;
+                int fieldStart = pos;
+                while (column <= lastColumn && fieldStart <= contentEnd) {
+                    int fieldEnd = fieldStart;
+                    while (fieldEnd < contentEnd && bytes[fieldEnd] != ',') {
+                        if (bytes[fieldEnd] == '"') {
+                            throw new QuotedFieldException();
+                        }
+                        fieldEnd++;
+                    }
+
+                    if (column == tripIdColumn) {
+                        trip = chunk.tripIds.encode(bytes, fieldStart, fieldEnd);
+                    } else if (column == stopIdColumn) {
+                        stop = chunk.stopIds.encode(bytes, fieldStart, fieldEnd);
+                    } else if (column == departureTimeColumn) {
+                        time = parseTime(bytes, fieldStart, fieldEnd);
+                    } else if (column == stopSequenceColumn) {
+                        sequence = parseInt(bytes, fieldStart, fieldEnd);
+                    }
+
+                    column++;
+                    fieldStart = fieldEnd + 1;
+                }
+
+                if (column <= lastColumn) {
+                    throw new IllegalArgumentException("Missing fields in stop_times line: "
+                            + new String(bytes, pos, contentEnd - pos, StandardCharsets.UTF_8));
+                }
+
+                // the remaining fields are not parsed, but may still hold a quote
+                for (int i = fieldStart; i < contentEnd; i++) {
+                    if (bytes[i] == '"') {
+                        throw new QuotedFieldException();
+                    }
+                }
+
+                chunk.add(trip, stop, time, sequence);
+            }
+
+            pos = lineEnd + 1;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Parses a HH:MM:SS time (the hours may have any number of digits) to
+     * seconds, -1 if the field isn't a valid time (like TimeConversion.toSeconds).
+     */
+    static int parseTime(byte[] bytes, int from, int to) {
+        // ((hours * 60) + minutes) * 60 + seconds, accumulated field by field
+        int seconds = 0;
+        int part = 0;
+        int digits = 0;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits++;
+            } else if (b == ':' && part < 2 && digits > 0) {
+                seconds = seconds * 60 + value;
+                part++;
+                value = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (part != 2 || digits == 0) {
+            return -1;
+        }
+
+        return seconds * 60 + value;
+    }
+
+    static int parseInt(byte[] bytes, int from, int to) {
+        boolean negative = from < to && bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw new NumberFormatException("Invalid integer: " + new String(bytes, from, to - from,
+                    StandardCharsets.UTF_8));
+        }
+
+        int value = 0;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Invalid integer: " + new String(bytes, from, to - from,
+                        StandardCharsets.UTF_8));
+            }
+            value = value * 10 + (b - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Slower parser, used for the files containing quoted fields.
+     */
+    private static StopTimes parseWithCsvReader(String path) throws IOException, CsvValidationException {
+        try (CSVReader reader = new CSVReader(new FileReader(path))) {
+            String[] headers = reader.readNext(); // Read the header row
+            if (headers == null) {
+                throw new IllegalArgumentException("CSV file is empty or missing headers.");
+            }
+
+            // Map header names to their indices
+            Map<String, Integer> headerMap = new HashMap<>();
+            for (int i = 0; i < headers.length; i++) {
+                headerMap.put(headers[i], i);
+            }
+
+            // Verify that required headers are present
+            String[] requiredHeaders = { "trip_id", "departure_time", "stop_id", "stop_sequence" };
+            for (String header : requiredHeaders) {
+                if (!headerMap.containsKey(header)) {
+                    throw new IllegalArgumentException("Missing required header: " + header);
+                }
+            }
+
+            Chunk rows = new Chunk();
+            Map<String, Integer> tripIdToCode = new HashMap<>();
+            Map<String, Integer> stopIdToCode = new HashMap<>();
+
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                String tripId = line[headerMap.get("trip_id")];
+                int departureTime = TimeConversion.toSeconds(line[headerMap.get("departure_time")]);
+                String stopId = line[headerMap.get("stop_id")];
+                int stopSequence = Integer.parseInt(line[headerMap.get("stop_sequence")]);
+
+                tripIdToCode.putIfAbsent(tripId, tripIdToCode.size());
+                stopIdToCode.putIfAbsent(stopId, stopIdToCode.size());
+                rows.add(tripIdToCode.get(tripId), stopIdToCode.get(stopId), departureTime, stopSequence);
+            }
+
+            String[] tripIds = new String[tripIdToCode.size()];
+            tripIdToCode.forEach((tripId, code) -> tripIds[code] = tripId);
+            String[] stopIds = new String[stopIdToCode.size()];
+            stopIdToCode.forEach((stopId, code) -> stopIds[code] = stopId);
+
+            return new StopTimes(tripIds, stopIds, Arrays.copyOf(rows.tripCode, rows.size),
+                    Arrays.copyOf(rows.stopCode, rows.size), Arrays.copyOf(rows.departureTime, rows.size),
+                    Arrays.copyOf(rows.stopSequence, rows.size));
+        }
+    }
+
+    // -----------------------------------------------------
+    // Merging
+    // -----------------------------------------------------
+
+    /**
+     * Concatenates the chunks, translating their local codes to global codes.
+     * The global codes are assigned by order of first appearance in the file.
+     */
+    private static StopTimes merge(List<Chunk> chunks) {
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.size;
+        }
+
+        int[] tripCode = new int[size];
+        int[] stopCode = new int[size];
+        int[] departureTime = new int[size];
+        int[] stopSequence = new int[size];
+
+        Map<String, Integer> tripIdToCode = new HashMap<>();
+        Map<String, Integer> stopIdToCode = new HashMap<>();
+
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            int[] tripCodes = chunk.tripIds.toGlobalCodes(tripIdToCode);
+            int[] stopCodes = chunk.stopIds.toGlobalCodes(stopIdToCode);
+
+            for (int i = 0; i < chunk.size; i++) {
+                tripCode[offset + i] = tripCodes[chunk.tripCode[i]];
+                stopCode[offset + i] = stopCodes[chunk.stopCode[i]];
+            }
+            System.arraycopy(chunk.departureTime, 0, departureTime, offset, chunk.size);
+            System.arraycopy(chunk.stopSequence, 0, stopSequence, offset, chunk.size);
+
+            offset += chunk.size;
+        }
+
+        String[] tripIds = new String[tripIdToCode.size()];
+        tripIdToCode.forEach((tripId, code) -> tripIds[code] = tripId);
+        String[] stopIds = new String[stopIdToCode.size()];
+        stopIdToCode.forEach((stopId, code) -> stopIds[code] = stopId);
+
+        return new StopTimes(tripIds, stopIds, tripCode, stopCode, departureTime, stopSequence);
+    }
+
+    // -----------------------------------------------------
+    // Dictionary
+    // -----------------------------------------------------
+
+    /**
+     * Open addressing hash table from byte sequences to dense codes (0, 1, 2, ...
+     * by order of insertion). A String is only created the first time a byte
+     * sequence is seen.
+     */
+    private static class ByteStringDictionary {
+        private int[] table = new int[1024]; // code + 1, 0 means empty
+        private int[] hashes = new int[512];
+        private byte[][] keys = new byte[512][];
+        private String[] values = new String[512];
+        private int size = 0;
+
+        int encode(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0) {
+                int code = table[slot] - 1;
+                if (hashes[code] == hash && Arrays.equals(keys[code], 0, keys[code].length, bytes, from, to)) {
+                    return code;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int code = size++;
+            if (code == keys.length) {
+                hashes = Arrays.copyOf(hashes, code * 2);
+                keys = Arrays.copyOf(keys, code * 2);
+                values = Arrays.copyOf(values, code * 2);
+            }
+            hashes[code] = hash;
+            keys[code] = Arrays.copyOfRange(bytes, from, to);
+            values[code] = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            table[slot] = code + 1;
+
+            if (size * 2 > table.length) {
+                rehash();
+            }
+
+            return code;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int code = 0; code < size; code++) {
+                int slot = mix(hashes[code]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code + 1;
+            }
+        }
+
+        /**
+         * Returns, for each local code, its code in the global dictionary (adding
+         * the missing strings to it).
+         */
+        int[] toGlobalCodes(Map<String, Integer> globalDictionary) {
+            int[] globalCodes = new int[size];
+            for (int code = 0; code < size; code++) {
+                Integer globalCode = globalDictionary.putIfAbsent(values[code], globalDictionary.size());
+                globalCodes[code] = (globalCode != null) ? globalCode : globalDictionary.size() - 1;
+            }
+            return globalCodes;
+        }
+    }
+
+}
@@ -0,0 +1,364 @@
+package projetalgo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a fully preprocessed Data: stops, routes, trips, the
+ * sorted connection table and the footpath graph.
+ *
+ * The file starts with a header (magic number, format version, footpath
+ * radius, then a section with the paths of the CSV files it was built from, in
+ * order) followed by the data sections. Each section is prefixed with its length in
+ * bytes and is memory-mapped on its own when loading, so that no section has to
+ * fit in a single 2GB mapping with the others.
+ *
+ * The format version must be incremented whenever the layout changes: a
+ * snapshot with another version, another footpath radius or other CSV files is
+ * rejected and the CSV files are loaded instead.
+ */
+public class TimetableSnapshot {
+    private static final int MAGIC = 0x414C4754; // "ALGT"
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Double.BYTES;
+
+    /**
+     * Returns true if the snapshot exists and is newer than all the CSV files of
+     * the given csvSets.
+     */
+    public static boolean isUpToDate(Path snapshot, CsvSet... csvSets) {
+        File snapshotFile = snapshot.toFile();
+        if (!snapshotFile.isFile()) {
+            return false;
+        }
+
+        long snapshotTime = snapshotFile.lastModified();
+        for (String csv : csvPaths(csvSets)) {
+            if (new File(csv).lastModified() >= snapshotTime) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the paths of the CSV files of the csvSets, set after set.
+     */
+    private static List<String> csvPaths(CsvSet... csvSets) {
+        List<String> paths = new ArrayList<>(4 * csvSets.length);
+        for (CsvSet csvSet : csvSets) {
+            paths.addAll(List.of(csvSet.routesCSV, csvSet.stopTimesCSV, csvSet.stopsCSV, csvSet.tripsCSV));
+        }
+        return paths;
+    }
+
+    // -----------------------------------------------------
+    // Writing
+    // -----------------------------------------------------
+
+    /**
+     * Writes the data, loaded from the CSV files of the csvSets, to the snapshot
+     * file. The file is first written next to the snapshot and then moved, so
+     * that a crash never leaves a truncated snapshot behind.
+     */
+    public static void write(Data data, Path snapshot, CsvSet... csvSets) throws IOException {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putDouble(Data.MAX_FOOTPATH_DIST_KM).flip();
+            writeFully(channel, header);
+
+            SectionWriter sourcesSection = new SectionWriter();
+            List<String> sources = csvPaths(csvSets);
+            sourcesSection.putInt(sources.size());
+            for (String source : sources) {
+                sourcesSection.putString(source);
+            }
+            sourcesSection.writeTo(channel);
+
+            ConnectionTable connections = data.connections;
+
+            Map<RouteInfo, Integer> routeInfoToIdx = new HashMap<>();
+            for (int i = 0; i < connections.routeInfos.length; i++) {
+                routeInfoToIdx.put(connections.routeInfos[i], i);
+            }
+
+            // stops, in index order
+            SectionWriter stopsSection = new SectionWriter();
+            stopsSection.putInt(data.stops.length);
+            for (Stop stop : data.stops) {
+                RouteInfo routeInfo = data.stopRouteInfos[stop.getIndex()];
+                stopsSection.putString(stop.getId());
+                stopsSection.putString(stop.getName());
+                stopsSection.putDouble(stop.getCoord().lat());
+                stopsSection.putDouble(stop.getCoord().lon());
+                stopsSection.putString(stop.getTransportOperatorStop());
+                stopsSection.putInt(routeInfo == null ? -1 : routeInfoToIdx.get(routeInfo));
+            }
+            stopsSection.writeTo(channel);
+
+            // routes
+            SectionWriter routesSection = new SectionWriter();
+            routesSection.putInt(connections.routeInfos.length);
+            for (RouteInfo routeInfo : connections.routeInfos) {
+                routesSection.putString(routeInfo.getRouteId());
+                routesSection.putString(routeInfo.getRouteName());
+                routesSection.putInt(routeInfo.getTransportType().ordinal());
+                routesSection.putString(routeInfo.getTransportOperator());
+            }
+            routesSection.writeTo(channel);
+
+            // trips
+            SectionWriter tripsSection = new SectionWriter();
+            tripsSection.putInt(connections.tripIds.length);
+            for (String tripId : connections.tripIds) {
+                tripsSection.putString(tripId);
+            }
+            tripsSection.writeTo(channel);
+
+            // connections, one section per column
+            for (int[] column : new int[][] { connections.pDepIdx, connections.pArrIdx, connections.tDep,
+                    connections.tArr, connections.tripIdx, connections.routeIdx }) {
+                writeIntArraySection(channel, column);
+            }
+
+            // footpaths, only the outgoing edges (the incoming ones are deduced from them)
+            writeIntArraySection(channel, data.footpaths.outStart);
+            writeIntArraySection(channel, data.footpaths.outStop);
+            writeIntArraySection(channel, data.footpaths.outDuration);
+        }
+
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeIntArraySection(FileChannel channel, int[] array) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+        length.putLong((long) array.length * Integer.BYTES).flip();
+        writeFully(channel, length);
+
+        // write by blocks to avoid allocating a buffer as large as the array
+        ByteBuffer block = ByteBuffer.allocateDirect(1 << 20);
+        int blockInts = block.capacity() / Integer.BYTES;
+        for (int from = 0; from < array.length; from += blockInts) {
+            int count = Math.min(blockInts, array.length - from);
+            block.clear();
+            block.asIntBuffer().put(array, from, count);
+            block.limit(count * Integer.BYTES);
+            writeFully(channel, block);
+        }
+    }
+
+    /**
+     * Accumulates a variable-length section (strings, etc.) before writing it
+     * with its length prefix.
+     */
+    private static class SectionWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+        private void ensureRemaining(int n) {
+            if (buffer.remaining() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+
+        void putInt(int value) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) {
+            ensureRemaining(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void writeTo(FileChannel channel) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+            length.putLong(buffer.position()).flip();
+            writeFully(channel, length);
+
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    // -----------------------------------------------------
+    // Loading
+    // -----------------------------------------------------
+
+    /**
+     * Loads a Data from the snapshot file by memory-mapping its sections.
+     *
+     * @throws IOException if the file can't be read, wasn't written by this
+     *                     version of the program or from the CSV files of the
+     *                     csvSets
+     */
+    public static Data load(Path snapshot, CsvSet... csvSets) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            SectionReader reader = new SectionReader(channel);
+
+            ByteBuffer header = reader.map(HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("not a timetable snapshot");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            if (header.getDouble() != Data.MAX_FOOTPATH_DIST_KM) {
+                throw new IOException("snapshot generated with another footpath radius");
+            }
+
+            ByteBuffer sourcesSection = reader.nextSection();
+            List<String> sources = new ArrayList<>();
+            for (int n = sourcesSection.getInt(); n > 0; n--) {
+                sources.add(getString(sourcesSection));
+            }
+            if (!sources.equals(csvPaths(csvSets))) {
+                throw new IOException("snapshot generated from other CSV files");
+            }
+
+            // stops (their route info is resolved once the routes are read)
+            ByteBuffer stopsSection = reader.nextSection();
+            Stop[] stops = new Stop[stopsSection.getInt()];
+            int[] stopRouteIdx = new int[stops.length];
+            for (int i = 0; i < stops.length; i++) {
+                String id = getString(stopsSection);
+                String name = getString(stopsSection);
+                Coord coord = new Coord(stopsSection.getDouble(), stopsSection.getDouble());
+                String transportOperator = getString(stopsSection);
+                stopRouteIdx[i] = stopsSection.getInt();
+
+                stops[i] = new Stop(id, name, coord, transportOperator);
+                stops[i].setIndex(i);
+            }
+
+            // routes
+            ByteBuffer routesSection = reader.nextSection();
+            RouteInfo[] routeInfos = new RouteInfo[routesSection.getInt()];
+            TransportType[] transportTypes = TransportType.values();
+            for (int i = 0; i < routeInfos.length; i++) {
+                String routeId = getString(routesSection);
+                String routeName = getString(routesSection);
+                TransportType transportType = transportTypes[routesSection.getInt()];
+                String transportOperator = getString(routesSection);
+                routeInfos[i] = new RouteInfo(routeId, routeName, transportType, transportOperator);
+            }
+
+            RouteInfo[] stopRouteInfos = new RouteInfo[stops.length];
+            for (int i = 0; i < stops.length; i++) {
+                if (stopRouteIdx[i] != -1) {
+                    stopRouteInfos[i] = routeInfos[stopRouteIdx[i]];
+                }
+            }
+
+            // trips
+            ByteBuffer tripsSection = reader.nextSection();
+            String[] tripIds = new String[tripsSection.getInt()];
+            for (int i = 0; i < tripIds.length; i++) {
+                tripIds[i] = getString(tripsSection);
+            }
+
+            // connections
+            int[] pDepIdx = reader.nextIntArraySection();
+            int[] pArrIdx = reader.nextIntArraySection();
+            int[] tDep = reader.nextIntArraySection();
+            int[] tArr = reader.nextIntArraySection();
+            int[] tripIdx = reader.nextIntArraySection();
+            int[] routeIdx = reader.nextIntArraySection();
+
+            // footpaths
+            int[] footpathsStart = reader.nextIntArraySection();
+            int[] footpathsStop = reader.nextIntArraySection();
+            int[] footpathsDuration = reader.nextIntArraySection();
+            if (footpathsStart.length != stops.length + 1) {
+                throw new IOException("invalid footpath section");
+            }
+
+            Data data = new Data();
+            data.stops = stops;
+            data.stopRouteInfos = stopRouteInfos;
+            data.stopIdToStop = new HashMap<>();
+            for (Stop stop : stops) {
+                data.stopIdToStop.put(stop.getId(), stop);
+            }
+            data.connections = new ConnectionTable(pDepIdx, pArrIdx, tDep, tArr, tripIdx, routeIdx, stops,
+                    tripIds, routeInfos);
+            data.footpaths = new FootpathGraph(footpathsStart, footpathsStop, footpathsDuration);
+            data.stopNames = new StopNameIndex(data.stopIdToStop.values());
+
+            return data;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps the sections of the snapshot one after the other.
+     */
+    private static class SectionReader {
+        private final FileChannel channel;
+        private long position = 0;
+
+        SectionReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        MappedByteBuffer map(long size) throws IOException {
+            if (position + size > channel.size()) {
+                throw new IOException("truncated snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return buffer;
+        }
+
+        MappedByteBuffer nextSection() throws IOException {
+            long size = map(Long.BYTES).getLong();
+            return map(size);
+        }
+
+        int[] nextIntArraySection() throws IOException {
+            MappedByteBuffer section = nextSection();
+            int[] array = new int[section.capacity() / Integer.BYTES];
+            section.asIntBuffer().get(array);
+            return array;
+        }
+    }
+
+}
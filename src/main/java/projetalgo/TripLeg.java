@@ -0,0 +1,56 @@
+package projetalgo;
+
+/**
+ * Part of a journey spent in a single trip: boarding at pDep at tDep, and
+ * alighting at pArr at tArr.
+ */
+public class TripLeg implements Movement {
+    private final String tripId;
+    private final RouteInfo routeInfo;
+    private final Stop pDep; // boarding stop
+    private final Stop pArr; // alighting stop
+    private final int tDep; // departure time from pDep
+    private final int tArr; // arrival time at pArr
+
+    public TripLeg(String tripId, RouteInfo routeInfo, Stop pDep, Stop pArr, int tDep, int tArr) {
+        this.tripId = tripId;
+        this.routeInfo = routeInfo;
+        this.pDep = pDep;
+        this.pArr = pArr;
+        this.tDep = tDep;
+        this.tArr = tArr;
+    }
+
+    @Override
+    public Stop getPDep() {
+        return pDep;
+    }
+
+    @Override
+    public Stop getPArr() {
+        return pArr;
+    }
+
+    public int getTDep() {
+        return tDep;
+    }
+
+    public int getTArr() {
+        return tArr;
+    }
+
+    public String getTripId() {
+        return tripId;
+    }
+
+    public RouteInfo getRouteInfo() {
+        return routeInfo;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tripId: %s, ((%s) -> (%s)), (%s -> %s)", tripId, pDep, pArr,
+                TimeConversion.fromSeconds(tDep), TimeConversion.fromSeconds(tArr));
+    }
+
+}